@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
+import org.killbill.billing.plugin.api.PluginCallContext;
+
+public class AccertifyCallContext extends PluginCallContext {
+
+    public AccertifyCallContext(final DateTime utcNow, final UUID tenantId) {
+        super(AccertifyActivator.PLUGIN_NAME, utcNow, tenantId);
+    }
+}
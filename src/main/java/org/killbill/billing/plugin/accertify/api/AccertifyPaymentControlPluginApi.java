@@ -18,20 +18,40 @@
 package org.killbill.billing.plugin.accertify.api;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
 import org.killbill.billing.control.plugin.api.PaymentControlApiException;
+import org.killbill.billing.control.plugin.api.OnSuccessPaymentControlResult;
 import org.killbill.billing.control.plugin.api.PaymentControlContext;
 import org.killbill.billing.control.plugin.api.PriorPaymentControlResult;
 import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
-import org.killbill.billing.payment.api.PaymentMethod;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.AccertifyBatcher;
+import org.killbill.billing.plugin.accertify.client.AccertifyClient;
 import org.killbill.billing.plugin.accertify.client.AccertifyClientException;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.client.AccertifyNotCalledException;
+import org.killbill.billing.plugin.accertify.client.AccountFieldMapping;
+import org.killbill.billing.plugin.accertify.client.AssessmentPolicy;
+import org.killbill.billing.plugin.accertify.client.CircuitBreaker;
+import org.killbill.billing.plugin.accertify.client.CircuitBreakerOpenException;
+import org.killbill.billing.plugin.accertify.client.ConcurrencyLimiter;
+import org.killbill.billing.plugin.accertify.client.ConcurrencyLimiterMBeans;
+import org.killbill.billing.plugin.accertify.client.FailureMode;
 import org.killbill.billing.plugin.accertify.client.RequestBuilder;
+import org.killbill.billing.plugin.accertify.client.RequestEntry;
+import org.killbill.billing.plugin.accertify.client.RequestPath;
+import org.killbill.billing.plugin.accertify.client.RequestPathCache;
 import org.killbill.billing.plugin.accertify.client.TransactionResults;
 import org.killbill.billing.plugin.accertify.core.AccertifyConfigurationHandler;
 import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
@@ -40,66 +60,182 @@ import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class AccertifyPaymentControlPluginApi extends PluginPaymentControlPluginApi {
 
     private static final Logger logger = LoggerFactory.getLogger(AccertifyPaymentControlPluginApi.class);
 
-    private static final Pattern ACCERTIFY_PROPERTIES_PATTERN = Pattern.compile("accertify_(.*)");
+    private static final String ACCERTIFY_PROPERTIES_PREFIX = "accertify_";
 
-    @VisibleForTesting
-    static final String ACCERTIFY_REJECT = "REJECT";
 
-    private final Collection<String> paymentPluginsSubjectToAutomaticRejection;
+    private final Set<String> paymentPluginsSubjectToAutomaticRejection;
     private final AccertifyDao dao;
     private final AccertifyConfigurationHandler accertifyConfigurationHandler;
+    private final RequestPathCache requestPathCache;
+    private final AccountCache accountCache;
+    private final DecisionCache decisionCache;
+    private final PaymentMethodPluginCache paymentMethodPluginCache;
+    private final ShadowAssessments shadowAssessments;
+    private final PostAuthorizationReviews postAuthorizationReviews;
 
     public AccertifyPaymentControlPluginApi(final Collection<String> paymentPluginsSubjectToAutomaticRejection,
                                             final AccertifyDao dao,
                                             final AccertifyConfigurationHandler accertifyConfigurationHandler,
+                                            final AccountCache accountCache,
+                                            final DecisionCache decisionCache,
+                                            final PaymentMethodPluginCache paymentMethodPluginCache,
+                                            @Nullable final ShadowAssessments shadowAssessments,
+                                            @Nullable final PostAuthorizationReviews postAuthorizationReviews,
                                             final OSGIKillbillAPI killbillApi,
                                             final OSGIConfigPropertiesService configProperties,
                                             final OSGIKillbillLogService logService,
                                             final Clock clock) {
         super(killbillApi, configProperties, logService, clock);
-        this.paymentPluginsSubjectToAutomaticRejection = paymentPluginsSubjectToAutomaticRejection;
+        // Looked up on each rejected payment
+        this.paymentPluginsSubjectToAutomaticRejection = ImmutableSet.<String>copyOf(paymentPluginsSubjectToAutomaticRejection);
         this.dao = dao;
         this.accertifyConfigurationHandler = accertifyConfigurationHandler;
+        this.requestPathCache = new RequestPathCache(ACCERTIFY_PROPERTIES_PREFIX);
+        this.accountCache = accountCache;
+        this.decisionCache = decisionCache;
+        this.paymentMethodPluginCache = paymentMethodPluginCache;
+        this.shadowAssessments = shadowAssessments;
+        this.postAuthorizationReviews = postAuthorizationReviews;
     }
 
     @Override
     public PriorPaymentControlResult priorCall(final PaymentControlContext context, final Iterable<PluginProperty> properties) throws PaymentControlApiException {
+        final AccertifyClient accertifyClient = accertifyConfigurationHandler.getConfigurable(context.getTenantId());
+
+        final AssessmentPolicy.Action action = getAction(accertifyClient, context);
+        if (action == AssessmentPolicy.Action.SKIP) {
+            logger.info("Accertify assessment skipped by policy: kbPaymentTransactionId={}", context.getTransactionId());
+            return new AccertifyPriorPaymentControlResult(false, context);
+        }
+        final boolean enforced = action == AssessmentPolicy.Action.ASSESS_AND_ENFORCE;
+
+        if (shadowAssessments != null && (!enforced || isShadowed(context))) {
+            // The result is only recorded: don't make the payment wait for it
+            final Iterable<PluginProperty> propertiesCopy = ImmutableList.<PluginProperty>copyOf(properties);
+            final boolean submitted = shadowAssessments.submit(new Runnable() {
+                @Override
+                public void run() {
+                    assess(accertifyClient, LatencyBudget.unbounded(), context, propertiesCopy);
+                }
+            });
+            if (!submitted) {
+                logger.warn("Shadow Accertify assessment dropped: kbPaymentTransactionId={}", context.getTransactionId());
+            }
+            return new AccertifyPriorPaymentControlResult(false, context);
+        }
+
+        if (isReviewed(accertifyClient, action, context)) {
+            // Assessed once the payment succeeded, see onSuccessCall
+            return new AccertifyPriorPaymentControlResult(false, context);
+        }
+
+        final LatencyBudget latencyBudget = LatencyBudget.start(accertifyClient.getLatencyBudgetMs());
+
         // Check with Accertify
-        final boolean shouldReject = assess(context, properties);
-        // Check if we should automatically reject the payment
-        final boolean shouldHonorAccertify = shouldHonorAccertify(context);
+        final boolean shouldReject = assess(accertifyClient, latencyBudget, context, properties);
+        // Check if we should automatically reject the payment (not needed otherwise)
+        final boolean shouldAbortPayment = enforced && shouldReject && shouldHonorAccertify(accertifyClient, latencyBudget, context);
 
-        final boolean shouldAbortPayment = shouldReject && shouldHonorAccertify;
-        logger.info("Accertify result: shouldAbortPayment={} (shouldReject={}, shouldHonorAccertify={})", shouldAbortPayment, shouldReject, shouldHonorAccertify);
+        logger.info("Accertify result: shouldAbortPayment={} (shouldReject={})", shouldAbortPayment, shouldReject);
         return new AccertifyPriorPaymentControlResult(shouldAbortPayment, context);
     }
 
-    private boolean assess(final PaymentControlContext context, final Iterable<PluginProperty> properties) {
-        final String transactions;
-        try {
-            transactions = createAccertifyTransactions(properties);
-        } catch (final AccertifyClientException e) {
-            logger.warn("Error while creating the Accertify payload", e);
-            return false;
+    @Override
+    public OnSuccessPaymentControlResult onSuccessCall(final PaymentControlContext context, final Iterable<PluginProperty> properties) throws PaymentControlApiException {
+        final AccertifyClient accertifyClient = accertifyConfigurationHandler.getConfigurable(context.getTenantId());
+        if (isReviewed(accertifyClient, getAction(accertifyClient, context), context)) {
+            try {
+                // The payload is stored with the review, so that it can be resumed after a restart
+                final byte[] transactions = createAccertifyTransactions(accertifyClient, createAccertifyTransaction(accertifyClient, context, properties));
+                postAuthorizationReviews.add(context, transactions);
+            } catch (final AccertifyClientException e) {
+                logger.warn("Error while creating the Accertify payload, the payment won't be reviewed: kbPaymentTransactionId={}", context.getTransactionId(), e);
+            }
+        }
+        return new AccertifyOnSuccessPaymentControlResult();
+    }
+
+    private boolean assess(final AccertifyClient accertifyClient, final LatencyBudget latencyBudget, final PaymentControlContext context, final Iterable<PluginProperty> properties) {
+        final AccertifyDecision decision;
+        if (context.getTransactionExternalKey() == null) {
+            decision = assessAndStore(accertifyClient, latencyBudget, context, properties);
+        } else {
+            // Kill Bill retries of the same transaction reuse the decision
+            decision = decisionCache.get(context.getTenantId(),
+                                         context.getPaymentExternalKey(),
+                                         context.getTransactionExternalKey(),
+                                         context.getTransactionType(),
+                                         latencyBudget,
+                                         new Callable<AccertifyDecision>() {
+                                             @Override
+                                             public AccertifyDecision call() {
+                                                 return assessAndStore(accertifyClient, latencyBudget, context, properties);
+                                             }
+                                         });
+        }
+
+        if (decision == null) {
+            return accertifyClient.getFailureMode() == FailureMode.FAIL_CLOSED;
+        }
+        return decision.isReject();
+    }
+
+    // Null if Accertify couldn't be called
+    @Nullable
+    private AccertifyDecision assessAndStore(final AccertifyClient accertifyClient, final LatencyBudget latencyBudget, final PaymentControlContext context, final Iterable<PluginProperty> properties) {
+        final AccertifyBatcher batcher = accertifyClient.getBatcher();
+        final List<RequestEntry> transaction = createAccertifyTransaction(accertifyClient, context, properties);
+        byte[] transactions = null;
+        if (batcher == null) {
+            try {
+                transactions = createAccertifyTransactions(accertifyClient, transaction);
+            } catch (final AccertifyClientException e) {
+                logger.warn("Error while creating the Accertify payload", e);
+                return null;
+            }
+        }
+
+        final ConcurrencyLimiter concurrencyLimiter = accertifyClient.getConcurrencyLimiter();
+        if (concurrencyLimiter != null) {
+            // Tenants without their own configuration share the global limiter, registered once
+            final boolean globalConfiguration = accertifyClient == accertifyConfigurationHandler.getConfigurable(null);
+            ConcurrencyLimiterMBeans.register(globalConfiguration ? null : context.getTenantId(), concurrencyLimiter);
         }
 
+        final CircuitBreaker circuitBreaker = accertifyClient.getCircuitBreaker();
+        // Stored with the response
+        CircuitBreaker.State circuitState = circuitBreaker == null ? null : circuitBreaker.getState();
+
         TransactionResults transactionResults = null;
-        try {
-            transactionResults = accertifyConfigurationHandler.getConfigurable(context.getTenantId()).assess(transactions);
-            logger.info("Accertify {} recommendation: kbPaymentTransactionId={}, total-score={}, rules-tripped={}, remarks={}",
-                        transactionResults.getRecommendationCode(),
-                        context.getTransactionId(),
-                        transactionResults.getTotalScore(),
-                        transactionResults.getRulesTripped(),
-                        transactionResults.getRemarks());
-        } catch (final AccertifyClientException e) {
-            logger.warn("Error while going to Accertify", e);
+        if (latencyBudget.isExhausted()) {
+            // E.g. slow account lookup
+            logger.info("Accertify latency budget exhausted before the call, applying {}: kbPaymentTransactionId={}", accertifyClient.getFailureMode(), context.getTransactionId());
+        } else {
+            try {
+                transactionResults = callAccertify(accertifyClient, latencyBudget, transaction, transactions);
+                logger.info("Accertify {} recommendation: kbPaymentTransactionId={}, total-score={}, rules-tripped={}, remarks={}",
+                            transactionResults.getRecommendationCode(),
+                            context.getTransactionId(),
+                            transactionResults.getTotalScore(),
+                            transactionResults.getRulesTripped(),
+                            transactionResults.getRemarks());
+            } catch (final AccertifyNotCalledException e) {
+                if (e instanceof CircuitBreakerOpenException) {
+                    circuitState = CircuitBreaker.State.OPEN;
+                }
+                // Expected during Accertify outages or traffic spikes, no need for the stack trace
+                logger.info("Accertify not called ({}), applying {}: kbPaymentTransactionId={}", e.getMessage(), accertifyClient.getFailureMode(), context.getTransactionId());
+            } catch (final AccertifyClientException e) {
+                logger.warn("Error while going to Accertify, applying {}", accertifyClient.getFailureMode(), e);
+            }
         }
 
         try {
@@ -110,31 +246,104 @@ public class AccertifyPaymentControlPluginApi extends PluginPaymentControlPlugin
                             context.getAmount(),
                             context.getCurrency(),
                             transactionResults,
+                            circuitState,
                             clock.getUTCNow(),
                             context.getTenantId());
         } catch (final SQLException e) {
             logger.warn("Error while storing the Accertify record", e);
         }
 
-        return transactionResults != null && ACCERTIFY_REJECT.equals(transactionResults.getRecommendationCode());
+        return transactionResults == null ? null : transactionResults.getDecision();
+    }
+
+    private TransactionResults callAccertify(final AccertifyClient accertifyClient,
+                                             final LatencyBudget latencyBudget,
+                                             final List<RequestEntry> transaction,
+                                             @Nullable final byte[] transactions) throws AccertifyClientException {
+        final AccertifyBatcher batcher = accertifyClient.getBatcher();
+        if (latencyBudget.isBounded()) {
+            // The HTTP request is aborted when the budget is exhausted
+            final long timeoutMs = latencyBudget.getRemainingMs();
+            return batcher == null ? accertifyClient.assess(transactions, timeoutMs) : batcher.assess(transaction, timeoutMs);
+        } else {
+            // When batching is enabled, the payload is built with the other transactions of the batch
+            return batcher == null ? accertifyClient.assess(transactions) : batcher.assess(transaction);
+        }
     }
 
-    private String createAccertifyTransactions(final Iterable<PluginProperty> properties) throws AccertifyClientException {
-        final RequestBuilder requestBuilder = new RequestBuilder();
+    private List<RequestEntry> createAccertifyTransaction(final AccertifyClient accertifyClient, final PaymentControlContext context, final Iterable<PluginProperty> properties) {
+        final List<RequestEntry> transaction = new ArrayList<RequestEntry>();
+
+        // Account fields first: plugin properties for the same fields take precedence
+        final AccountFieldMapping accountFieldMapping = accertifyClient.getAccountFieldMapping();
+        if (!accountFieldMapping.isEmpty() && context.getAccountId() != null) {
+            final Account account = accountCache.getAccount(context.getAccountId(), context);
+            if (account != null) {
+                accountFieldMapping.addEntries(account, transaction);
+            }
+        }
+
         for (final PluginProperty pluginProperty : properties) {
             if (pluginProperty.getKey() != null) {
-                final Matcher matcher = ACCERTIFY_PROPERTIES_PATTERN.matcher(pluginProperty.getKey());
-                if (matcher.matches()) {
-                    final String key = matcher.group(1);
-                    requestBuilder.addTransactionEntry(key, pluginProperty.getValue());
+                final RequestPath path = requestPathCache.get(pluginProperty.getKey());
+                if (path != null) {
+                    transaction.add(new RequestEntry(path, pluginProperty.getValue()));
                 }
             }
         }
-        return requestBuilder.build();
+        return transaction;
     }
 
-    private boolean shouldHonorAccertify(final PaymentControlContext context) {
-        final PaymentMethod paymentMethod = getPaymentMethod(context.getPaymentMethodId(), context);
-        return paymentPluginsSubjectToAutomaticRejection.contains(paymentMethod.getPluginName());
+    private byte[] createAccertifyTransactions(final AccertifyClient accertifyClient, final List<RequestEntry> transaction) throws AccertifyClientException {
+        final RequestBuilder requestBuilder = new RequestBuilder(RequestBuilder.Mode.STREAMING, accertifyClient.getRequestOrdering());
+        return requestBuilder.addStaticFragment(accertifyClient.getStaticFragment())
+                             .addTransactionEntries(transaction)
+                             .buildAsBytes();
+    }
+
+    private AssessmentPolicy.Action getAction(final AccertifyClient accertifyClient, final PaymentControlContext context) {
+        return accertifyClient.getAssessmentPolicy().decide(context.getTransactionType(),
+                                                            context.getAmount(),
+                                                            context.getCurrency(),
+                                                            new Supplier<String>() {
+                                                                @Override
+                                                                public String get() {
+                                                                    // Only if a rule depends on the payment plugin
+                                                                    return paymentMethodPluginCache.getPluginName(context.getPaymentMethodId(), context);
+                                                                }
+                                                            });
+    }
+
+    // Only authorizations and purchases can be voided or refunded
+    private boolean isReviewed(final AccertifyClient accertifyClient, final AssessmentPolicy.Action action, final PaymentControlContext context) {
+        return postAuthorizationReviews != null &&
+               action == AssessmentPolicy.Action.ASSESS_AND_ENFORCE &&
+               accertifyClient.isReviewMode() &&
+               (context.getTransactionType() == TransactionType.AUTHORIZE || context.getTransactionType() == TransactionType.PURCHASE) &&
+               !(shadowAssessments != null && isShadowed(context));
+    }
+
+    // Plugin not subject to automatic rejection (when unknown, the payment goes through the regular path)
+    private boolean isShadowed(final PaymentControlContext context) {
+        final String pluginName = paymentMethodPluginCache.getPluginName(context.getPaymentMethodId(), context);
+        return pluginName != null && !paymentPluginsSubjectToAutomaticRejection.contains(pluginName);
+    }
+
+    private boolean shouldHonorAccertify(final AccertifyClient accertifyClient, final LatencyBudget latencyBudget, final PaymentControlContext context) {
+        String pluginName = paymentMethodPluginCache.getCachedPluginName(context.getPaymentMethodId(), context);
+        if (pluginName == null) {
+            // The failure mode only applies when the plugin cannot be determined
+            if (latencyBudget.isExhausted()) {
+                logger.info("Accertify latency budget exhausted before the payment method lookup, applying {}: kbPaymentTransactionId={}", accertifyClient.getFailureMode(), context.getTransactionId());
+                return accertifyClient.getFailureMode() == FailureMode.FAIL_CLOSED;
+            }
+
+            pluginName = paymentMethodPluginCache.getPluginName(context.getPaymentMethodId(), context);
+            if (pluginName == null) {
+                logger.info("Unable to retrieve the payment plugin, applying {}: kbPaymentTransactionId={}", accertifyClient.getFailureMode(), context.getTransactionId());
+                return accertifyClient.getFailureMode() == FailureMode.FAIL_CLOSED;
+            }
+        }
+        return paymentPluginsSubjectToAutomaticRejection.contains(pluginName);
     }
 }
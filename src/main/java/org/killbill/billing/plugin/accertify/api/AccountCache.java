@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Account snapshots used for the enrichment of the requests (see AccountFieldMapping), so that repeat payers
+ * don't require an account lookup on each payment. Entries expire after a TTL and are invalidated on ACCOUNT_CHANGE events.
+ */
+public class AccountCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TTL_SEC = 300;
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountCache.class);
+
+    private final OSGIKillbillAPI killbillApi;
+    private final Cache<UUID, Account> accounts;
+
+    public AccountCache(final OSGIKillbillAPI killbillApi) {
+        this(killbillApi, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SEC);
+    }
+
+    public AccountCache(final OSGIKillbillAPI killbillApi, final long maximumSize, final long ttlSec) {
+        this.killbillApi = killbillApi;
+        this.accounts = CacheBuilder.newBuilder()
+                                    .maximumSize(maximumSize)
+                                    .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                                    .build();
+    }
+
+    // Null if the account cannot be retrieved: the enrichment is best effort
+    @Nullable
+    public Account getAccount(final UUID accountId, final TenantContext context) {
+        try {
+            return accounts.get(accountId, new Callable<Account>() {
+                @Override
+                public Account call() throws Exception {
+                    return killbillApi.getAccountUserApi().getAccountById(accountId, context);
+                }
+            });
+        } catch (final ExecutionException e) {
+            logger.warn("Unable to retrieve account {}", accountId, e.getCause());
+            return null;
+        } catch (final RuntimeException e) {
+            // UncheckedExecutionException, or null account
+            logger.warn("Unable to retrieve account {}", accountId, e);
+            return null;
+        }
+    }
+
+    public void invalidate(final UUID accountId) {
+        accounts.invalidate(accountId);
+    }
+
+    public long size() {
+        return accounts.size();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Accertify decisions per payment transaction, so that Kill Bill retries of the same transaction (plugin or
+ * payment control retries) don't trigger new Accertify calls. Concurrent assessments of the same transaction
+ * share a single call (each caller waiting within its own latency budget), and decisions stored less than a TTL ago
+ * are reused after a restart.
+ * <p/>
+ * Failed assessments aren't cached: the next retry goes to Accertify again.
+ */
+public class DecisionCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TTL_SEC = 3600;
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionCache.class);
+
+    private final AccertifyDao dao;
+    private final Clock clock;
+    private final long ttlSec;
+    private final Cache<Key, AccertifyDecision> decisions;
+    // Assessments in progress, completed with null if the transaction couldn't be assessed
+    private final ConcurrentMap<Key, SettableFuture<AccertifyDecision>> assessments = new ConcurrentHashMap<Key, SettableFuture<AccertifyDecision>>();
+
+    public DecisionCache(final AccertifyDao dao, final Clock clock) {
+        this(dao, clock, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SEC);
+    }
+
+    public DecisionCache(final AccertifyDao dao, final Clock clock, final long maximumSize, final long ttlSec) {
+        this.dao = dao;
+        this.clock = clock;
+        this.ttlSec = ttlSec;
+        this.decisions = CacheBuilder.newBuilder()
+                                     .maximumSize(maximumSize)
+                                     .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                                     .build();
+    }
+
+    // Null if the transaction couldn't be assessed (i.e. assessment returned null or failed, or the latency budget was exhausted)
+    @Nullable
+    public AccertifyDecision get(final UUID kbTenantId,
+                                 final String kbPaymentExternalKey,
+                                 final String kbPaymentTransactionExternalKey,
+                                 final TransactionType transactionType,
+                                 final LatencyBudget latencyBudget,
+                                 final Callable<AccertifyDecision> assessment) {
+        final Key key = new Key(kbTenantId, kbPaymentExternalKey, kbPaymentTransactionExternalKey, transactionType);
+        final AccertifyDecision cachedDecision = decisions.getIfPresent(key);
+        if (cachedDecision != null) {
+            logger.info("Reusing Accertify decision {}: kbPaymentTransactionExternalKey={}", cachedDecision, kbPaymentTransactionExternalKey);
+            return cachedDecision;
+        }
+
+        final SettableFuture<AccertifyDecision> assessmentResult = SettableFuture.<AccertifyDecision>create();
+        final SettableFuture<AccertifyDecision> concurrentAssessmentResult = assessments.putIfAbsent(key, assessmentResult);
+        if (concurrentAssessmentResult != null) {
+            return waitFor(concurrentAssessmentResult, latencyBudget, kbPaymentTransactionExternalKey);
+        }
+
+        AccertifyDecision decision = null;
+        try {
+            decision = assess(key, latencyBudget, assessment);
+            if (decision != null) {
+                decisions.put(key, decision);
+            }
+        } catch (final Exception e) {
+            logger.warn("Unable to assess kbPaymentTransactionExternalKey={}", kbPaymentTransactionExternalKey, e);
+        } finally {
+            // After caching the decision, so that later calls don't assess again
+            assessmentResult.set(decision);
+            assessments.remove(key, assessmentResult);
+        }
+        return decision;
+    }
+
+    public long size() {
+        return decisions.size();
+    }
+
+    @Nullable
+    private AccertifyDecision assess(final Key key, final LatencyBudget latencyBudget, final Callable<AccertifyDecision> assessment) throws Exception {
+        // Completed while this call was looking up the cache
+        final AccertifyDecision cachedDecision = decisions.getIfPresent(key);
+        if (cachedDecision != null) {
+            return cachedDecision;
+        }
+
+        // Don't spend the rest of the budget on the database (the assessment applies the failure mode)
+        if (!latencyBudget.isExhausted()) {
+            final AccertifyDecision storedDecision = getStoredDecision(key);
+            if (storedDecision != null) {
+                logger.info("Reusing stored Accertify decision {}: kbPaymentTransactionExternalKey={}", storedDecision, key.kbPaymentTransactionExternalKey);
+                return storedDecision;
+            }
+        }
+        return assessment.call();
+    }
+
+    // The concurrent assessment is bounded by the budget of its own caller
+    @Nullable
+    private AccertifyDecision waitFor(final Future<AccertifyDecision> assessmentResult, final LatencyBudget latencyBudget, final String kbPaymentTransactionExternalKey) {
+        try {
+            return assessmentResult.get(latencyBudget.getRemainingMs(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            logger.info("Accertify latency budget exhausted while waiting for the concurrent assessment: kbPaymentTransactionExternalKey={}", kbPaymentTransactionExternalKey);
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            // Never set with an exception
+            logger.warn("Unable to assess kbPaymentTransactionExternalKey={}", kbPaymentTransactionExternalKey, e.getCause());
+            return null;
+        }
+    }
+
+    @Nullable
+    private AccertifyDecision getStoredDecision(final Key key) {
+        final AccertifyResponsesRecord response;
+        try {
+            response = dao.getLatestAssessedResponse(key.kbPaymentExternalKey,
+                                                     key.kbPaymentTransactionExternalKey,
+                                                     key.transactionType,
+                                                     clock.getUTCNow().minusSeconds((int) ttlSec),
+                                                     key.kbTenantId);
+        } catch (final SQLException e) {
+            logger.warn("Unable to retrieve the stored Accertify decision, kbPaymentTransactionExternalKey={}", key.kbPaymentTransactionExternalKey, e);
+            return null;
+        }
+        return response == null ? null : AccertifyDecision.of(response.getRecommendationCode(), response.getTotalScore(), response.getRulesTripped());
+    }
+
+    private static final class Key {
+
+        private final UUID kbTenantId;
+        private final String kbPaymentExternalKey;
+        private final String kbPaymentTransactionExternalKey;
+        private final TransactionType transactionType;
+
+        private Key(final UUID kbTenantId, final String kbPaymentExternalKey, final String kbPaymentTransactionExternalKey, final TransactionType transactionType) {
+            this.kbTenantId = kbTenantId;
+            this.kbPaymentExternalKey = kbPaymentExternalKey;
+            this.kbPaymentTransactionExternalKey = kbPaymentTransactionExternalKey;
+            this.transactionType = transactionType;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Key that = (Key) o;
+            return Objects.equal(kbTenantId, that.kbTenantId) &&
+                   Objects.equal(kbPaymentExternalKey, that.kbPaymentExternalKey) &&
+                   Objects.equal(kbPaymentTransactionExternalKey, that.kbPaymentTransactionExternalKey) &&
+                   transactionType == that.transactionType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kbTenantId, kbPaymentExternalKey, kbPaymentTransactionExternalKey, transactionType);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Time left for a priorCall, when the tenant has a latency budget (see AccertifyClient#getLatencyBudgetMs()).
+ */
+final class LatencyBudget {
+
+    private static final LatencyBudget UNBOUNDED = new LatencyBudget(AccertifyClient.NO_LATENCY_BUDGET, Ticker.systemTicker());
+
+    private final boolean bounded;
+    private final long deadlineNanos;
+    private final Ticker ticker;
+
+    static LatencyBudget start(final long budgetMs) {
+        return budgetMs < 0 ? UNBOUNDED : new LatencyBudget(budgetMs, Ticker.systemTicker());
+    }
+
+    // E.g. for the assessments the payment doesn't wait for
+    static LatencyBudget unbounded() {
+        return UNBOUNDED;
+    }
+
+    // Unbounded if budgetMs is negative (e.g. AccertifyClient.NO_LATENCY_BUDGET)
+    LatencyBudget(final long budgetMs, final Ticker ticker) {
+        this.bounded = budgetMs >= 0;
+        this.deadlineNanos = ticker.read() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMs));
+        this.ticker = ticker;
+    }
+
+    boolean isBounded() {
+        return bounded;
+    }
+
+    boolean isExhausted() {
+        return bounded && ticker.read() - deadlineNanos >= 0;
+    }
+
+    long getRemainingMs() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - ticker.read()));
+    }
+}
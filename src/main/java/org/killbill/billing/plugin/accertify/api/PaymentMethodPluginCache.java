@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Payment plugin name of the payment methods, per tenant, to avoid a payment method lookup on each rejected payment.
+ * Payment methods never change plugin, so entries don't need any invalidation: the TTL only bounds how long
+ * deleted payment methods are kept around.
+ */
+public class PaymentMethodPluginCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TTL_SEC = 3600;
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentMethodPluginCache.class);
+
+    private final OSGIKillbillAPI killbillApi;
+    private final Cache<Key, String> pluginNames;
+
+    public PaymentMethodPluginCache(final OSGIKillbillAPI killbillApi) {
+        this(killbillApi, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SEC);
+    }
+
+    public PaymentMethodPluginCache(final OSGIKillbillAPI killbillApi, final long maximumSize, final long ttlSec) {
+        this.killbillApi = killbillApi;
+        this.pluginNames = CacheBuilder.newBuilder()
+                                       .maximumSize(maximumSize)
+                                       .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                                       .build();
+    }
+
+    // Null if the payment method cannot be retrieved
+    @Nullable
+    public String getPluginName(final UUID paymentMethodId, final TenantContext context) {
+        try {
+            return pluginNames.get(new Key(context.getTenantId(), paymentMethodId), new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return killbillApi.getPaymentApi()
+                                      .getPaymentMethodById(paymentMethodId, false, false, ImmutableList.<PluginProperty>of(), context)
+                                      .getPluginName();
+                }
+            });
+        } catch (final ExecutionException e) {
+            logger.warn("Unable to retrieve payment method {}", paymentMethodId, e.getCause());
+            return null;
+        } catch (final RuntimeException e) {
+            // UncheckedExecutionException, or null payment method
+            logger.warn("Unable to retrieve payment method {}", paymentMethodId, e);
+            return null;
+        }
+    }
+
+    // Null if the payment method isn't cached (no lookup)
+    @Nullable
+    public String getCachedPluginName(final UUID paymentMethodId, final TenantContext context) {
+        return pluginNames.getIfPresent(new Key(context.getTenantId(), paymentMethodId));
+    }
+
+    public long size() {
+        return pluginNames.size();
+    }
+
+    private static final class Key {
+
+        private final UUID kbTenantId;
+        private final UUID paymentMethodId;
+
+        private Key(final UUID kbTenantId, final UUID paymentMethodId) {
+            this.kbTenantId = kbTenantId;
+            this.paymentMethodId = paymentMethodId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Key that = (Key) o;
+            return Objects.equal(kbTenantId, that.kbTenantId) && Objects.equal(paymentMethodId, that.paymentMethodId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kbTenantId, paymentMethodId);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.jooq.types.UInteger;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.control.plugin.api.PaymentControlContext;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.client.TransactionResults;
+import org.killbill.billing.plugin.accertify.core.AccertifyConfigurationHandler;
+import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
+import org.killbill.billing.plugin.accertify.dao.ReviewState;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Post-authorization reviews: the payment isn't blocked on Accertify, the assessment happens in the background once
+ * the payment succeeded, and the payment is voided (authorizations) or refunded (purchases) if Accertify rejects it.
+ * Authorizations already captured are refunded, only the uncaptured remainder is voided.
+ * <p/>
+ * Reviews are tracked in accertify_reviews: failed reviews are retried, and pending reviews are resumed after a
+ * restart. Reviews are claimed before being processed, so that they are processed once across nodes (the claim
+ * expires if the node dies).
+ */
+public class PostAuthorizationReviews {
+
+    public static final int DEFAULT_NB_THREADS = 2;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_RETRY_INTERVAL_SEC = 60;
+
+    private static final Logger logger = LoggerFactory.getLogger(PostAuthorizationReviews.class);
+
+    private static final int CLAIM_TIMEOUT_MIN = 10;
+    private static final int MAX_REVIEWS_PER_SWEEP = 100;
+    private static final String TRANSACTION_EXTERNAL_KEY_PREFIX = "accertify-review-";
+    private static final String CAPTURE_REFUND_EXTERNAL_KEY_SUFFIX = "-refund";
+
+    private final AccertifyDao dao;
+    private final AccertifyConfigurationHandler accertifyConfigurationHandler;
+    private final PaymentMethodPluginCache paymentMethodPluginCache;
+    private final Set<String> paymentPluginsSubjectToAutomaticRejection;
+    private final OSGIKillbillAPI killbillApi;
+    private final Clock clock;
+    private final int maxAttempts;
+    private final long retryIntervalSec;
+    private final ScheduledThreadPoolExecutor executor;
+
+    public PostAuthorizationReviews(final AccertifyDao dao,
+                                    final AccertifyConfigurationHandler accertifyConfigurationHandler,
+                                    final PaymentMethodPluginCache paymentMethodPluginCache,
+                                    final Collection<String> paymentPluginsSubjectToAutomaticRejection,
+                                    final OSGIKillbillAPI killbillApi,
+                                    final Clock clock,
+                                    final int nbThreads,
+                                    final int maxAttempts,
+                                    final long retryIntervalSec) {
+        this.dao = dao;
+        this.accertifyConfigurationHandler = accertifyConfigurationHandler;
+        this.paymentMethodPluginCache = paymentMethodPluginCache;
+        this.paymentPluginsSubjectToAutomaticRejection = ImmutableSet.<String>copyOf(paymentPluginsSubjectToAutomaticRejection);
+        this.killbillApi = killbillApi;
+        this.clock = clock;
+        this.maxAttempts = maxAttempts;
+        this.retryIntervalSec = retryIntervalSec;
+        this.executor = new ScheduledThreadPoolExecutor(nbThreads,
+                                                        new ThreadFactoryBuilder().setNameFormat("accertify-review-%d")
+                                                                                  .setDaemon(true)
+                                                                                  .build());
+    }
+
+    // Resumes the pending reviews and retries the failed ones periodically
+    public void start() {
+        executor.scheduleWithFixedDelay(new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                sweep();
+                                            }
+                                        },
+                                        0,
+                                        retryIntervalSec,
+                                        TimeUnit.SECONDS);
+    }
+
+    // Pending reviews are resumed on the next start
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public void add(final PaymentControlContext context, final byte[] requestPayload) {
+        final UInteger recordId;
+        try {
+            recordId = dao.addReview(context.getAccountId(),
+                                     context.getPaymentMethodId(),
+                                     context.getPaymentId(),
+                                     context.getPaymentExternalKey(),
+                                     context.getTransactionId(),
+                                     context.getTransactionExternalKey(),
+                                     context.getTransactionType(),
+                                     context.getAmount(),
+                                     context.getCurrency(),
+                                     new String(requestPayload, Charsets.UTF_8),
+                                     clock.getUTCNow(),
+                                     context.getTenantId());
+        } catch (final SQLException e) {
+            logger.warn("Error while storing the Accertify review, the payment won't be reviewed: kbPaymentTransactionId={}", context.getTransactionId(), e);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                process(recordId);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    void sweep() {
+        final List<UInteger> recordIds;
+        try {
+            recordIds = dao.getReviewsToProcess(clock.getUTCNow().minusMinutes(CLAIM_TIMEOUT_MIN), MAX_REVIEWS_PER_SWEEP);
+        } catch (final SQLException e) {
+            logger.warn("Error while retrieving the pending Accertify reviews", e);
+            return;
+        }
+
+        for (final UInteger recordId : recordIds) {
+            process(recordId);
+        }
+    }
+
+    @VisibleForTesting
+    void process(final UInteger recordId) {
+        final AccertifyReviewsRecord review;
+        try {
+            final DateTime utcNow = clock.getUTCNow();
+            if (!dao.claimReview(recordId, utcNow.minusMinutes(CLAIM_TIMEOUT_MIN), utcNow)) {
+                // Already processed or being processed
+                return;
+            }
+            review = dao.getReview(recordId);
+        } catch (final SQLException e) {
+            logger.warn("Error while claiming the Accertify review {}", recordId, e);
+            return;
+        }
+
+        final int attempts = review.getAttempts() + 1;
+        ReviewState state;
+        String lastError = null;
+        try {
+            state = reviewPayment(review);
+            logger.info("Accertify review done: kbPaymentTransactionId={}, state={}", review.getKbPaymentTransactionId(), state);
+        } catch (final Exception e) {
+            // Accertify, Kill Bill or database error
+            state = attempts >= maxAttempts ? ReviewState.FAILED : ReviewState.PENDING;
+            lastError = e.toString();
+            if (state == ReviewState.FAILED) {
+                // Not retried anymore: the payment needs to be reviewed manually
+                logger.error("Accertify review FAILED, giving up: kbPaymentId={}, kbPaymentTransactionId={}, attempts={}", review.getKbPaymentId(), review.getKbPaymentTransactionId(), attempts, e);
+            } else {
+                logger.warn("Error during the Accertify review: kbPaymentTransactionId={}, attempts={}, state={}", review.getKbPaymentTransactionId(), attempts, state, e);
+            }
+        }
+
+        try {
+            dao.updateReview(recordId, state, attempts, lastError, clock.getUTCNow());
+        } catch (final SQLException e) {
+            // The review will be processed again once the claim expires
+            logger.warn("Error while updating the Accertify review {}", recordId, e);
+        }
+    }
+
+    private ReviewState reviewPayment(final AccertifyReviewsRecord review) throws Exception {
+        final UUID kbTenantId = UUID.fromString(review.getKbTenantId());
+        final AccertifyDecision decision = assess(review, kbTenantId);
+        if (!decision.isReject()) {
+            return ReviewState.ACCEPTED;
+        }
+
+        final AccertifyCallContext context = new AccertifyCallContext(clock.getUTCNow(), kbTenantId);
+        final String pluginName = paymentMethodPluginCache.getPluginName(UUID.fromString(review.getKbPaymentMethodId()), context);
+        if (pluginName == null) {
+            throw new IllegalStateException("Unable to retrieve the payment method " + review.getKbPaymentMethodId());
+        } else if (!paymentPluginsSubjectToAutomaticRejection.contains(pluginName)) {
+            // Only recorded
+            return ReviewState.ACCEPTED;
+        }
+
+        final UUID kbPaymentId = UUID.fromString(review.getKbPaymentId());
+        final Payment payment = killbillApi.getPaymentApi().getPayment(kbPaymentId, false, false, ImmutableList.<PluginProperty>of(), context);
+        final Account account = killbillApi.getAccountUserApi().getAccountById(UUID.fromString(review.getKbAccountId()), context);
+        final Currency currency = Currency.valueOf(review.getCurrency());
+
+        // Deterministic, so that a review processed again (e.g. the state update failed) doesn't void or refund twice
+        final String transactionExternalKey = getTransactionExternalKey(review.getRecordId());
+        if (!TransactionType.AUTHORIZE.name().equals(review.getTransactionType())) {
+            if (isAlreadyIssued(payment, transactionExternalKey)) {
+                logger.info("Accertify review already processed: kbPaymentTransactionId={}, transactionExternalKey={}", review.getKbPaymentTransactionId(), transactionExternalKey);
+            } else {
+                killbillApi.getPaymentApi().createRefund(account, kbPaymentId, review.getAmount(), currency, transactionExternalKey, ImmutableList.<PluginProperty>of(), context);
+            }
+            return ReviewState.REFUNDED;
+        }
+
+        // The authorization may have been captured in the meantime: a captured payment cannot be voided
+        final BigDecimal capturedAmount = nullToZero(payment.getCapturedAmount());
+        if (capturedAmount.signum() > 0) {
+            final String refundTransactionExternalKey = getCaptureRefundTransactionExternalKey(review.getRecordId());
+            final BigDecimal refundableAmount = capturedAmount.subtract(nullToZero(payment.getRefundedAmount()));
+            if (isAlreadyIssued(payment, refundTransactionExternalKey)) {
+                logger.info("Accertify review already processed: kbPaymentTransactionId={}, transactionExternalKey={}", review.getKbPaymentTransactionId(), refundTransactionExternalKey);
+            } else if (refundableAmount.signum() > 0) {
+                killbillApi.getPaymentApi().createRefund(account, kbPaymentId, refundableAmount, currency, refundTransactionExternalKey, ImmutableList.<PluginProperty>of(), context);
+            }
+        }
+
+        // Releases the uncaptured remainder of the authorization, if any
+        final boolean fullyCaptured = capturedAmount.signum() > 0 && capturedAmount.compareTo(nullToZero(payment.getAuthAmount())) >= 0;
+        if (fullyCaptured) {
+            return ReviewState.REFUNDED;
+        } else if (isAlreadyIssued(payment, transactionExternalKey)) {
+            logger.info("Accertify review already processed: kbPaymentTransactionId={}, transactionExternalKey={}", review.getKbPaymentTransactionId(), transactionExternalKey);
+        } else {
+            killbillApi.getPaymentApi().createVoid(account, kbPaymentId, transactionExternalKey, ImmutableList.<PluginProperty>of(), context);
+        }
+        return capturedAmount.signum() > 0 ? ReviewState.REFUNDED : ReviewState.VOIDED;
+    }
+
+    @VisibleForTesting
+    static String getTransactionExternalKey(final UInteger recordId) {
+        return TRANSACTION_EXTERNAL_KEY_PREFIX + recordId;
+    }
+
+    // Refund of the captured part of a rejected authorization
+    @VisibleForTesting
+    static String getCaptureRefundTransactionExternalKey(final UInteger recordId) {
+        return getTransactionExternalKey(recordId) + CAPTURE_REFUND_EXTERNAL_KEY_SUFFIX;
+    }
+
+    private static BigDecimal nullToZero(@Nullable final BigDecimal amount) {
+        return amount == null ? BigDecimal.ZERO : amount;
+    }
+
+    // Failed voids and refunds can be retried with the same external key
+    private boolean isAlreadyIssued(final Payment payment, final String transactionExternalKey) {
+        for (final PaymentTransaction transaction : payment.getTransactions()) {
+            if (transactionExternalKey.equals(transaction.getExternalKey()) &&
+                transaction.getTransactionStatus() != TransactionStatus.PAYMENT_FAILURE &&
+                transaction.getTransactionStatus() != TransactionStatus.PLUGIN_FAILURE &&
+                transaction.getTransactionStatus() != TransactionStatus.PAYMENT_SYSTEM_OFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AccertifyDecision assess(final AccertifyReviewsRecord review, final UUID kbTenantId) throws Exception {
+        final TransactionType transactionType = TransactionType.valueOf(review.getTransactionType());
+
+        // Previous attempt which failed after the assessment (e.g. void error): don't call Accertify again
+        final AccertifyResponsesRecord response = dao.getLatestAssessedResponse(review.getKbPaymentExternalKey(),
+                                                                                review.getKbPaymentTransactionExternalKey(),
+                                                                                transactionType,
+                                                                                new DateTime(review.getCreatedDate().getTime(), DateTimeZone.UTC),
+                                                                                kbTenantId);
+        if (response != null) {
+            return AccertifyDecision.of(response.getRecommendationCode(), response.getTotalScore(), response.getRulesTripped());
+        }
+
+        final AccertifyClient accertifyClient = accertifyConfigurationHandler.getConfigurable(kbTenantId);
+        final TransactionResults transactionResults = accertifyClient.assess(review.getRequestPayload().getBytes(Charsets.UTF_8));
+        logger.info("Accertify {} recommendation: kbPaymentTransactionId={}, total-score={}, rules-tripped={}, remarks={}",
+                    transactionResults.getRecommendationCode(),
+                    review.getKbPaymentTransactionId(),
+                    transactionResults.getTotalScore(),
+                    transactionResults.getRulesTripped(),
+                    transactionResults.getRemarks());
+
+        dao.addResponse(UUID.fromString(review.getKbAccountId()),
+                        review.getKbPaymentExternalKey(),
+                        review.getKbPaymentTransactionExternalKey(),
+                        transactionType,
+                        review.getAmount(),
+                        Currency.valueOf(review.getCurrency()),
+                        transactionResults,
+                        null,
+                        clock.getUTCNow(),
+                        kbTenantId);
+        return transactionResults.getDecision();
+    }
+}
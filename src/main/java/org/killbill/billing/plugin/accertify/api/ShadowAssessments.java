@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded background executor for the shadow assessments, i.e. payments whose plugin isn't subject to automatic
+ * rejection: the Accertify result is only recorded, so the payment doesn't wait for it. When the queue is full
+ * (e.g. Accertify outage), assessments are dropped rather than slowing down the payments.
+ */
+public class ShadowAssessments {
+
+    public static final int DEFAULT_NB_THREADS = 4;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(ShadowAssessments.class);
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong nbDropped = new AtomicLong();
+
+    public ShadowAssessments() {
+        this(DEFAULT_NB_THREADS, DEFAULT_QUEUE_SIZE);
+    }
+
+    public ShadowAssessments(final int nbThreads, final int queueSize) {
+        this.executor = new ThreadPoolExecutor(nbThreads,
+                                               nbThreads,
+                                               0L,
+                                               TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(queueSize),
+                                               new ThreadFactoryBuilder().setNameFormat("accertify-shadow-%d")
+                                                                         .setDaemon(true)
+                                                                         .build());
+    }
+
+    // False if the assessment was dropped
+    public boolean submit(final Runnable assessment) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        assessment.run();
+                    } catch (final RuntimeException e) {
+                        logger.warn("Error during the shadow Accertify assessment", e);
+                    }
+                }
+            });
+            return true;
+        } catch (final RejectedExecutionException e) {
+            nbDropped.incrementAndGet();
+            return false;
+        }
+    }
+
+    public long getNbDropped() {
+        return nbDropped.get();
+    }
+
+    // Pending assessments are dropped
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
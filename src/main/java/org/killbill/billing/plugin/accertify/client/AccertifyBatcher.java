@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Groups concurrent assessments for the same tenant into a single multi-transaction Accertify call.
+ * <p/>
+ * A batch is sent when it reaches maxBatchSize transactions, or maxDelayMs after its first transaction was queued.
+ * Results are dispatched back to each caller using the cross-reference Accertify echoes, which is the value
+ * of the crossReferenceKey entry of each transaction (transactions without it are sent on their own).
+ */
+public class AccertifyBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccertifyBatcher.class);
+
+    private final AccertifyClient client;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final String crossReferenceKey;
+    private final long timeoutMs;
+    private final Object lock = new Object();
+
+    private Batch currentBatch;
+
+    public AccertifyBatcher(final AccertifyClient client, final int maxBatchSize, final long maxDelayMs, final String crossReferenceKey, final long timeoutMs) {
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.crossReferenceKey = crossReferenceKey;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public TransactionResults assess(final List<RequestEntry> transaction) throws AccertifyClientException {
+        return assess(transaction, maxDelayMs + timeoutMs);
+    }
+
+    // Give up after timeoutMs, e.g. to honor a latency budget (the batch itself is still sent)
+    public TransactionResults assess(final List<RequestEntry> transaction, final long timeoutMs) throws AccertifyClientException {
+        final String crossReference = findCrossReference(transaction);
+        if (crossReference == null) {
+            // The result couldn't be matched back
+            return client.assess(buildRequest(transaction), timeoutMs);
+        }
+
+        final PendingAssessment pendingAssessment = new PendingAssessment(transaction, crossReference);
+        final Batch batchToFlush = enqueue(pendingAssessment);
+        if (batchToFlush != null) {
+            flush(batchToFlush);
+        }
+
+        try {
+            return waitFor(pendingAssessment, timeoutMs);
+        } finally {
+            if (pendingAssessment.interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The caller which opens a batch (the leader) waits up to maxDelayMs for other transactions and sends it,
+    // unless another caller fills it first (it is then sent right away by that caller). No extra thread is needed.
+    @Nullable
+    private Batch enqueue(final PendingAssessment pendingAssessment) {
+        synchronized (lock) {
+            final boolean isLeader = currentBatch == null;
+            if (isLeader) {
+                currentBatch = new Batch();
+            }
+            final Batch batch = currentBatch;
+            batch.pendingAssessments.add(pendingAssessment);
+
+            if (batch.pendingAssessments.size() >= maxBatchSize) {
+                currentBatch = null;
+                lock.notifyAll();
+                return batch;
+            }
+
+            if (!isLeader) {
+                return null;
+            }
+
+            final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            while (currentBatch == batch && remainingNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+                } catch (final InterruptedException e) {
+                    // Send the batch right away, the other callers are waiting on it too (the interrupt
+                    // status is restored once the batch has been sent, so as not to abort the HTTP call)
+                    pendingAssessment.interrupted = true;
+                    break;
+                }
+                remainingNanos = deadlineNanos - System.nanoTime();
+            }
+
+            if (currentBatch == batch) {
+                currentBatch = null;
+                return batch;
+            }
+            // Already sent by the caller which filled it
+            return null;
+        }
+    }
+
+    private TransactionResults waitFor(final PendingAssessment pendingAssessment, final long timeoutMs) throws AccertifyClientException {
+        try {
+            return pendingAssessment.result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccertifyClientException(e);
+        } catch (final TimeoutException e) {
+            throw new AccertifyClientException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof AccertifyClientException) {
+                throw (AccertifyClientException) e.getCause();
+            }
+            throw new AccertifyClientException(e);
+        }
+    }
+
+    private void flush(final Batch batch) {
+        final List<PendingAssessment> pendingAssessments = batch.pendingAssessments;
+        try {
+            if (pendingAssessments.size() == 1) {
+                final PendingAssessment pendingAssessment = pendingAssessments.get(0);
+                pendingAssessment.result.set(client.assess(buildRequest(pendingAssessment.transaction)));
+                return;
+            }
+
+            final RequestBuilder requestBuilder = new RequestBuilder(RequestBuilder.Mode.STREAMING, client.getRequestOrdering());
+            for (final PendingAssessment pendingAssessment : pendingAssessments) {
+                requestBuilder.addTransaction()
+                              .addStaticFragment(client.getStaticFragment())
+                              .addTransactionEntries(pendingAssessment.transaction);
+            }
+
+            final List<TransactionResults> transactionResultsList = client.assessBatch(requestBuilder.buildAsBytes());
+            final Map<String, TransactionResults> transactionResultsByCrossReference = new HashMap<String, TransactionResults>();
+            for (final TransactionResults transactionResults : transactionResultsList) {
+                if (transactionResults.getCrossReference() != null) {
+                    transactionResultsByCrossReference.put(transactionResults.getCrossReference(), transactionResults);
+                }
+            }
+
+            for (final PendingAssessment pendingAssessment : pendingAssessments) {
+                final TransactionResults transactionResults = transactionResultsByCrossReference.get(pendingAssessment.crossReference);
+                if (transactionResults == null) {
+                    pendingAssessment.result.setException(new AccertifyClientException("No transaction-results returned for cross-reference " + pendingAssessment.crossReference));
+                } else {
+                    pendingAssessment.result.set(transactionResults);
+                }
+            }
+        } catch (final AccertifyClientException e) {
+            // Short-circuited batches are logged by the callers
+            if (!(e instanceof AccertifyNotCalledException)) {
+                logger.warn("Error while sending a batch of {} transactions to Accertify", pendingAssessments.size(), e);
+            }
+            for (final PendingAssessment pendingAssessment : pendingAssessments) {
+                pendingAssessment.result.setException(e);
+            }
+        } catch (final RuntimeException e) {
+            for (final PendingAssessment pendingAssessment : pendingAssessments) {
+                pendingAssessment.result.setException(e);
+            }
+        }
+    }
+
+    @Nullable
+    private String findCrossReference(final List<RequestEntry> transaction) {
+        String crossReference = null;
+        for (final RequestEntry entry : transaction) {
+            if (crossReferenceKey.equals(entry.getPath().getEntryKey()) && entry.getValue() != null) {
+                // Last one wins, as in the request
+                crossReference = String.valueOf(entry.getValue());
+            }
+        }
+        return crossReference;
+    }
+
+    private byte[] buildRequest(final List<RequestEntry> transaction) throws AccertifyClientException {
+        final RequestBuilder requestBuilder = new RequestBuilder(RequestBuilder.Mode.STREAMING, client.getRequestOrdering());
+        return requestBuilder.addStaticFragment(client.getStaticFragment())
+                             .addTransactionEntries(transaction)
+                             .buildAsBytes();
+    }
+
+    private static final class Batch {
+
+        private final List<PendingAssessment> pendingAssessments = new ArrayList<PendingAssessment>();
+    }
+
+    private static final class PendingAssessment {
+
+        private final List<RequestEntry> transaction;
+        private final String crossReference;
+        private final SettableFuture<TransactionResults> result = SettableFuture.<TransactionResults>create();
+        private boolean interrupted;
+
+        private PendingAssessment(final List<RequestEntry> transaction, final String crossReference) {
+            this.transaction = transaction;
+            this.crossReference = crossReference;
+        }
+    }
+}
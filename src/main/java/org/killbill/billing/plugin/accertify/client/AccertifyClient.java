@@ -18,72 +18,399 @@
 package org.killbill.billing.plugin.accertify.client;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.security.GeneralSecurityException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nullable;
 
 import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
-import org.killbill.billing.plugin.util.http.HttpClient;
-import org.killbill.billing.plugin.util.http.InvalidRequest;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Objects;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.ProxyServer;
+import com.ning.http.client.Realm;
 import com.ning.http.client.Response;
 
-public class AccertifyClient extends HttpClient {
+public class AccertifyClient {
 
-    private static final String DEFAULT_EMPTY_BODY = "<?xml version=\"1.0\" encoding=\"utf-8\"?><transactions><transactions>";
+    private static final byte[] DEFAULT_EMPTY_BODY = "<?xml version=\"1.0\" encoding=\"utf-8\"?><transactions><transactions>".getBytes(Charsets.UTF_8);
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String XML_CONTENT_TYPE = "application/xml; charset=utf-8";
+    private static final int DEFAULT_HTTP_TIMEOUT_SEC = 70;
+    private static final long DEFAULT_MAX_RESPONSE_BODY_SIZE = 1024 * 1024;
 
-    public AccertifyClient(final Properties properties) throws GeneralSecurityException {
-        super(properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "url"),
-              properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "username"),
-              properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "password"),
-              properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "proxyHost"),
-              getIntegerProperty(properties, "proxyPort"),
-              getBooleanProperty(properties, "strictSSL"));
+    private static final String DEFAULT_BATCH_CROSS_REFERENCE_KEY = "transactionID";
+    private static final long DEFAULT_BATCH_MAX_DELAY_MS = 5;
+
+    private static final long DEFAULT_HEDGE_MIN_DELAY_MS = 50;
+    private static final double DEFAULT_HEDGE_MAX_RATIO = 0.05;
+
+    private static final int DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = 20;
+    private static final long DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_MS = 5000;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MS = 30000;
+
+    private static final int DEFAULT_MIN_CONCURRENCY = 1;
+
+    // See getLatencyBudgetMs()
+    public static final long NO_LATENCY_BUDGET = -1;
+
+    private static final long DEFAULT_ADAPTIVE_TIMEOUT_MIN_MS = 1000;
+    // Don't trust the percentiles before
+    private static final long ADAPTIVE_TIMEOUT_MIN_SAMPLES = 100;
+    private static final double ADAPTIVE_TIMEOUT_PERCENTILE = 99;
+
+    private static final String STATIC_FIELDS_PREFIX = AccertifyActivator.PROPERTY_PREFIX + "staticFields.";
+    private static final String ACCOUNT_FIELDS_PREFIX = AccertifyActivator.PROPERTY_PREFIX + "accountFields.";
+    private static final String POLICY_PREFIX = AccertifyActivator.PROPERTY_PREFIX + "policy.";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String proxyHost;
+    private final Integer proxyPort;
+    // Shared with the other tenants, see HttpTransports
+    private final AsyncHttpClient httpClient;
+    private final RequestOrdering requestOrdering;
+    private final long maxResponseBodySize;
+    private final StaticRequestFragment staticFragment;
+    private final AccountFieldMapping accountFieldMapping;
+    private final AssessmentPolicy assessmentPolicy;
+    private final AccertifyBatcher batcher;
+    private final HedgingPolicy hedgingPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final FailureMode failureMode;
+    private final long latencyBudgetMs;
+    // Latencies of the single assessments, over the last minute
+    private final LatencyHistogram latencies;
+    // Null if adaptive timeouts aren't enabled for this tenant
+    private final Double adaptiveTimeoutMultiplier;
+    private final long adaptiveTimeoutMinMs;
+    private final long adaptiveTimeoutMaxMs;
+    private final boolean reviewMode;
+
+    public AccertifyClient(final Properties properties) {
+        this.url = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "url");
+        this.username = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "username");
+        this.password = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "password");
+        this.proxyHost = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "proxyHost");
+        this.proxyPort = getIntegerProperty(properties, "proxyPort");
+        this.httpClient = HttpTransports.get(url, proxyHost, proxyPort, getBooleanProperty(properties, "strictSSL"));
+        this.requestOrdering = getRequestOrderingProperty(properties, "requestOrdering");
+        final Integer maxResponseBodySize = getIntegerProperty(properties, "maxResponseBodySize");
+        this.maxResponseBodySize = maxResponseBodySize == null ? DEFAULT_MAX_RESPONSE_BODY_SIZE : maxResponseBodySize;
+        this.staticFragment = compileStaticFragment(properties, requestOrdering);
+        this.accountFieldMapping = AccountFieldMapping.compile(getPropertiesWithPrefix(properties, ACCOUNT_FIELDS_PREFIX));
+        this.assessmentPolicy = AssessmentPolicy.compile(getPropertiesWithPrefix(properties, POLICY_PREFIX));
+
+        // Batching is opt-in
+        final Integer batchMaxSize = getIntegerProperty(properties, "batchMaxSize");
+        if (batchMaxSize != null && batchMaxSize > 1) {
+            final Integer batchMaxDelayMs = getIntegerProperty(properties, "batchMaxDelayMs");
+            final String batchCrossReferenceKey = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "batchCrossReferenceKey");
+            this.batcher = new AccertifyBatcher(this,
+                                                batchMaxSize,
+                                                batchMaxDelayMs == null ? DEFAULT_BATCH_MAX_DELAY_MS : batchMaxDelayMs,
+                                                Strings.isNullOrEmpty(batchCrossReferenceKey) ? DEFAULT_BATCH_CROSS_REFERENCE_KEY : batchCrossReferenceKey,
+                                                TimeUnit.SECONDS.toMillis(DEFAULT_HTTP_TIMEOUT_SEC));
+        } else {
+            this.batcher = null;
+        }
+
+        this.latencies = new LatencyHistogram();
+
+        // Adaptive timeouts are opt-in, e.g. adaptiveTimeoutMultiplier=3 sets the timeout to three times the p99 latency
+        this.adaptiveTimeoutMultiplier = getDoubleProperty(properties, "adaptiveTimeoutMultiplier");
+        final Integer adaptiveTimeoutMinMs = getIntegerProperty(properties, "adaptiveTimeoutMinMs");
+        final Integer adaptiveTimeoutMaxMs = getIntegerProperty(properties, "adaptiveTimeoutMaxMs");
+        this.adaptiveTimeoutMaxMs = Math.min(adaptiveTimeoutMaxMs == null ? Long.MAX_VALUE : adaptiveTimeoutMaxMs, TimeUnit.SECONDS.toMillis(DEFAULT_HTTP_TIMEOUT_SEC));
+        this.adaptiveTimeoutMinMs = Math.min(adaptiveTimeoutMinMs == null ? DEFAULT_ADAPTIVE_TIMEOUT_MIN_MS : adaptiveTimeoutMinMs, this.adaptiveTimeoutMaxMs);
+
+        // Hedging is opt-in
+        final Double hedgeDelayPercentile = getDoubleProperty(properties, "hedgeDelayPercentile");
+        if (hedgeDelayPercentile != null) {
+            final Integer hedgeMinDelayMs = getIntegerProperty(properties, "hedgeMinDelayMs");
+            final Double hedgeMaxRatio = getDoubleProperty(properties, "hedgeMaxRatio");
+            this.hedgingPolicy = new HedgingPolicy(hedgeDelayPercentile,
+                                                   hedgeMinDelayMs == null ? DEFAULT_HEDGE_MIN_DELAY_MS : hedgeMinDelayMs,
+                                                   hedgeMaxRatio == null ? DEFAULT_HEDGE_MAX_RATIO : hedgeMaxRatio,
+                                                   latencies);
+        } else {
+            this.hedgingPolicy = null;
+        }
+
+        // The circuit breaker is opt-in, e.g. circuitBreakerFailureRate=50 opens it when half the calls fail
+        final Double circuitBreakerFailureRate = getDoubleProperty(properties, "circuitBreakerFailureRate");
+        if (circuitBreakerFailureRate != null) {
+            final Integer circuitBreakerWindowSize = getIntegerProperty(properties, "circuitBreakerWindowSize");
+            final Integer circuitBreakerSlowCallMs = getIntegerProperty(properties, "circuitBreakerSlowCallMs");
+            final Integer circuitBreakerOpenMs = getIntegerProperty(properties, "circuitBreakerOpenMs");
+            this.circuitBreaker = new CircuitBreaker(circuitBreakerWindowSize == null ? DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE : circuitBreakerWindowSize,
+                                                     circuitBreakerFailureRate / 100,
+                                                     circuitBreakerSlowCallMs == null ? DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_MS : circuitBreakerSlowCallMs,
+                                                     circuitBreakerOpenMs == null ? DEFAULT_CIRCUIT_BREAKER_OPEN_MS : circuitBreakerOpenMs);
+        } else {
+            this.circuitBreaker = null;
+        }
+
+        // The concurrency limiter is opt-in
+        final Integer maxConcurrency = getIntegerProperty(properties, "maxConcurrency");
+        if (maxConcurrency != null) {
+            final Integer minConcurrency = getIntegerProperty(properties, "minConcurrency");
+            this.concurrencyLimiter = new ConcurrencyLimiter(minConcurrency == null ? DEFAULT_MIN_CONCURRENCY : minConcurrency, maxConcurrency);
+        } else {
+            this.concurrencyLimiter = null;
+        }
+
+        final String failureMode = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "failureMode");
+        this.failureMode = Strings.isNullOrEmpty(failureMode) ? FailureMode.FAIL_OPEN : FailureMode.valueOf(failureMode.trim().toUpperCase(Locale.ENGLISH));
+
+        final Integer latencyBudgetMs = getIntegerProperty(properties, "latencyBudgetMs");
+        this.latencyBudgetMs = latencyBudgetMs == null ? NO_LATENCY_BUDGET : latencyBudgetMs;
+
+        // Post-authorization reviews are opt-in
+        this.reviewMode = Boolean.valueOf(properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + "reviewMode"));
+    }
+
+    public RequestOrdering getRequestOrdering() {
+        return requestOrdering;
+    }
+
+    // Fields sent on every request for this tenant
+    public StaticRequestFragment getStaticFragment() {
+        return staticFragment;
+    }
+
+    // Fields filled from the Kill Bill account for this tenant
+    public AccountFieldMapping getAccountFieldMapping() {
+        return accountFieldMapping;
+    }
+
+    // Whether to call Accertify, and enforce its recommendation, for each payment of this tenant
+    public AssessmentPolicy getAssessmentPolicy() {
+        return assessmentPolicy;
     }
 
-    @Override
-    protected ObjectMapper createObjectMapper() {
-        return XmlMapperProvider.get();
+    // Null if batching isn't enabled for this tenant
+    @Nullable
+    public AccertifyBatcher getBatcher() {
+        return batcher;
+    }
+
+    // Null if the circuit breaker isn't enabled for this tenant
+    @Nullable
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Null if the concurrency limiter isn't enabled for this tenant
+    @Nullable
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public FailureMode getFailureMode() {
+        return failureMode;
+    }
+
+    // Maximum time spent in priorCall, NO_LATENCY_BUDGET if unbounded
+    public long getLatencyBudgetMs() {
+        return latencyBudgetMs;
+    }
+
+    // If true, authorizations and purchases are assessed after the fact, and voided or refunded on REJECT
+    public boolean isReviewMode() {
+        return reviewMode;
     }
 
     public TransactionResults assess(@Nullable final String transactions) throws AccertifyClientException {
-        final String uri = url;
-        final String body = Objects.firstNonNull(transactions, DEFAULT_EMPTY_BODY);
+        return assess(transactions == null ? null : transactions.getBytes(Charsets.UTF_8));
+    }
+
+    public TransactionResults assess(@Nullable final byte[] transactions) throws AccertifyClientException {
+        return waitFor(assessAsync(transactions));
+    }
+
+    // Give up (and abort the HTTP request) after timeoutMs, if lower than the HTTP timeout
+    public TransactionResults assess(@Nullable final byte[] transactions, final long timeoutMs) throws AccertifyClientException {
+        return waitFor(assessAsync(transactions), timeoutMs);
+    }
+
+    /**
+     * Assess transactions without blocking: the response is parsed by the HTTP client thread,
+     * which completes the returned future. If hedging is enabled, the request may be sent twice.
+     *
+     * @param transactions the request body
+     * @return the future results, failed with an AccertifyClientException (AccertifyNotCalledException if
+     * Accertify wasn't called) or an IOException on error
+     */
+    public ListenableFuture<TransactionResults> assessAsync(@Nullable final byte[] transactions) {
+        final byte[] body = transactions == null ? DEFAULT_EMPTY_BODY : transactions;
+        final Supplier<ListenableFuture<TransactionResults>> assessment = new Supplier<ListenableFuture<TransactionResults>>() {
+            @Override
+            public ListenableFuture<TransactionResults> get() {
+                return doAssessAsync(body);
+            }
+        };
+        return execute(assessment);
+    }
+
+    // Assess multiple transactions at once, see AccertifyBatcher
+    public List<TransactionResults> assessBatch(final byte[] transactions) throws AccertifyClientException {
+        final Supplier<ListenableFuture<TransactionResultsList>> assessment = new Supplier<ListenableFuture<TransactionResultsList>>() {
+            @Override
+            public ListenableFuture<TransactionResultsList> get() {
+                return doPostAsync(transactions, TransactionResultsList.class);
+            }
+        };
+        return waitFor(execute(assessment)).getTransactionResults();
+    }
+
+    // Call Accertify through the concurrency limiter and the circuit breaker, if enabled
+    private <T> ListenableFuture<T> execute(final Supplier<ListenableFuture<T>> call) {
+        final Supplier<ListenableFuture<T>> guardedCall;
+        if (circuitBreaker == null) {
+            guardedCall = call;
+        } else {
+            guardedCall = new Supplier<ListenableFuture<T>>() {
+                @Override
+                public ListenableFuture<T> get() {
+                    return circuitBreaker.execute(call);
+                }
+            };
+        }
+        return concurrencyLimiter == null ? guardedCall.get() : concurrencyLimiter.execute(guardedCall);
+    }
+
+    private ListenableFuture<TransactionResults> doAssessAsync(final byte[] body) {
+        if (hedgingPolicy == null) {
+            return doPostAsync(body, TransactionResults.class);
+        }
+
+        return HedgedAssessment.start(new Supplier<ListenableFuture<TransactionResults>>() {
+                                          @Override
+                                          public ListenableFuture<TransactionResults> get() {
+                                              return doPostAsync(body, TransactionResults.class);
+                                          }
+                                      },
+                                      hedgingPolicy,
+                                      HttpTransports.getScheduler());
+    }
+
+    // Send the body as bytes: this avoids the String to bytes encoding in the underlying client
+    private <T> ListenableFuture<T> doPostAsync(final byte[] body, final Class<T> clazz) {
+        final AsyncHttpClient.BoundRequestBuilder builder = httpClient.preparePost(url)
+                                                                      .setHeader(CONTENT_TYPE_HEADER, XML_CONTENT_TYPE)
+                                                                      .setRequestTimeout((int) getRequestTimeoutMs(clazz))
+                                                                      .setBody(body);
+        if (username != null || password != null) {
+            final Realm.RealmBuilder realm = new Realm.RealmBuilder().setUsePreemptiveAuth(true)
+                                                                     .setScheme(Realm.AuthScheme.BASIC);
+            if (username != null) {
+                realm.setPrincipal(username);
+            }
+            if (password != null) {
+                realm.setPassword(password);
+            }
+            builder.setRealm(realm.build());
+        }
+        if (proxyHost != null && proxyPort != null) {
+            builder.setProxyServer(new ProxyServer(proxyHost, proxyPort));
+        }
 
+        final ResponseFuture<T> result = new ResponseFuture<T>();
+        final ParsingResponseHandler<T> handler = new ParsingResponseHandler<T>(clazz, result);
+        result.addListener(new Runnable() {
+                               @Override
+                               public void run() {
+                                   // Losing hedge or latency budget exhausted: the slow tail, recorded as a lower bound
+                                   if (result.isCancelled()) {
+                                       handler.recordLatency();
+                                   }
+                               }
+                           },
+                           MoreExecutors.directExecutor());
+        result.setResponseFuture(builder.execute(handler));
+        return result;
+    }
+
+    // Multiple of the recent p99 latency if adaptive timeouts are enabled, for single assessments
+    @VisibleForTesting
+    long getRequestTimeoutMs(final Class<?> clazz) {
+        if (adaptiveTimeoutMultiplier == null || !TransactionResults.class.equals(clazz) || latencies.getTotalCount() < ADAPTIVE_TIMEOUT_MIN_SAMPLES) {
+            return TimeUnit.SECONDS.toMillis(DEFAULT_HTTP_TIMEOUT_SEC);
+        }
+
+        final long timeoutMs = (long) (latencies.getPercentileMs(ADAPTIVE_TIMEOUT_PERCENTILE) * adaptiveTimeoutMultiplier);
+        return Math.max(adaptiveTimeoutMinMs, Math.min(adaptiveTimeoutMaxMs, timeoutMs));
+    }
+
+    @VisibleForTesting
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    private <T> T handleResponse(final Response response, final Class<T> clazz) throws IOException, AccertifyClientException {
+        if (response.getStatusCode() >= 400) {
+            throw new AccertifyClientException("Accertify returned HTTP status " + response.getStatusCode() + ": " + response.getResponseBody());
+        }
+
+        return deserializeResponse(response, clazz);
+    }
+
+    private static <T> T waitFor(final Future<T> future) throws AccertifyClientException {
+        // The request timeout is enforced by the HTTP client already
+        return waitFor(future, TimeUnit.SECONDS.toMillis(DEFAULT_HTTP_TIMEOUT_SEC));
+    }
+
+    private static <T> T waitFor(final Future<T> future, final long timeoutMs) throws AccertifyClientException {
         try {
-            return doCall(POST, uri, body, DEFAULT_OPTIONS, TransactionResults.class);
+            return future.get(Math.min(timeoutMs, TimeUnit.SECONDS.toMillis(DEFAULT_HTTP_TIMEOUT_SEC)), TimeUnit.MILLISECONDS);
         } catch (final InterruptedException e) {
-            throw new AccertifyClientException(e);
-        } catch (final ExecutionException e) {
+            future.cancel(true);
             throw new AccertifyClientException(e);
         } catch (final TimeoutException e) {
-            throw new AccertifyClientException(e);
-        } catch (final IOException e) {
-            throw new AccertifyClientException(e);
-        } catch (final URISyntaxException e) {
-            throw new AccertifyClientException(e);
-        } catch (final InvalidRequest e) {
-            throw new AccertifyClientException(e);
+            future.cancel(true);
+            throw new AccertifyClientException("No response from Accertify after " + timeoutMs + "ms", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof AccertifyClientException) {
+                throw (AccertifyClientException) e.getCause();
+            } else if (e.getCause() instanceof Exception) {
+                throw new AccertifyClientException((Exception) e.getCause());
+            } else {
+                throw new AccertifyClientException(e);
+            }
         }
     }
 
-    @Override
-    protected <T> T deserializeResponse(final Response response, final Class<T> clazz) throws IOException {
-        final String body = response.getResponseBody();
+    private <T> T deserializeResponse(final Response response, final Class<T> clazz) throws IOException {
+        // Parsed in a single pass, error responses included
+        if (TransactionResults.class.equals(clazz)) {
+            return clazz.cast(ResponseParser.parseTransactionResults(ResponseParser.decode(response.getResponseBodyAsBytes(), response.getContentType())));
+        } else if (TransactionResultsList.class.equals(clazz)) {
+            return clazz.cast(ResponseParser.parseTransactionResultsList(ResponseParser.decode(response.getResponseBodyAsBytes(), response.getContentType())));
+        }
 
+        final InputStream body = response.getResponseBodyAsStream();
         try {
-            return mapper.readValue(body, clazz);
-        } catch (final JsonProcessingException e) {
-            final ErrorResponse errorResponse = mapper.readValue(body, ErrorResponse.class);
-            throw new IOException("Accertify returned an error: " + errorResponse.getMessage());
+            return ResponseParser.parse(body, clazz, XmlMapperProvider.getShared().readerFor(clazz));
+        } finally {
+            body.close();
         }
     }
 
@@ -92,8 +419,116 @@ public class AccertifyClient extends HttpClient {
         return Strings.isNullOrEmpty(property) ? null : Integer.valueOf(property);
     }
 
+    private static Double getDoubleProperty(final Properties properties, final String key) {
+        final String property = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + key);
+        return Strings.isNullOrEmpty(property) ? null : Double.valueOf(property);
+    }
+
+    private static RequestOrdering getRequestOrderingProperty(final Properties properties, final String key) {
+        final String property = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + key);
+        return Strings.isNullOrEmpty(property) ? RequestOrdering.SORTED : RequestOrdering.valueOf(property.trim().toUpperCase(Locale.ENGLISH));
+    }
+
     private static Boolean getBooleanProperty(final Properties properties, final String key) {
         final String property = properties.getProperty(AccertifyActivator.PROPERTY_PREFIX + key);
         return Strings.isNullOrEmpty(property) ? true : Boolean.valueOf(property);
     }
+
+    // E.g. org.killbill.billing.plugin.accertify.staticFields.collectionTransaction->merchantId=XXX
+    private static StaticRequestFragment compileStaticFragment(final Properties properties, final RequestOrdering ordering) {
+        try {
+            return StaticRequestFragment.compile(getPropertiesWithPrefix(properties, STATIC_FIELDS_PREFIX), ordering);
+        } catch (final AccertifyClientException e) {
+            throw new IllegalArgumentException("Invalid static fields configuration", e);
+        }
+    }
+
+    // Properties starting with the prefix, keyed by the rest of the property name
+    private static Map<String, String> getPropertiesWithPrefix(final Properties properties, final String prefix) {
+        final Map<String, String> propertiesWithPrefix = new HashMap<String, String>();
+        for (final String propertyName : properties.stringPropertyNames()) {
+            if (propertyName.startsWith(prefix) && propertyName.length() > prefix.length()) {
+                propertiesWithPrefix.put(propertyName.substring(prefix.length()), properties.getProperty(propertyName));
+            }
+        }
+        return propertiesWithPrefix;
+    }
+
+    // Completed by the HTTP client thread
+    private final class ParsingResponseHandler<T> extends BoundedResponseHandler {
+
+        private final Class<T> clazz;
+        private final ResponseFuture<T> result;
+        private final long startNanos = System.nanoTime();
+        // A cancelled request can still complete
+        private final AtomicBoolean latencyRecorded = new AtomicBoolean();
+
+        private ParsingResponseHandler(final Class<T> clazz, final ResponseFuture<T> result) {
+            super(maxResponseBodySize);
+            this.clazz = clazz;
+            this.result = result;
+        }
+
+        @Override
+        public Response onCompleted(final Response response) throws Exception {
+            recordLatency();
+
+            try {
+                result.set(handleResponse(response, clazz));
+            } catch (final Exception e) {
+                result.setException(e);
+            }
+            return response;
+        }
+
+        @Override
+        public void onThrowable(final Throwable t) {
+            // Timeouts are latencies too: otherwise the adaptive timeout could only decrease
+            if (t instanceof TimeoutException) {
+                recordLatency();
+            }
+            result.setException(t);
+        }
+
+        private void recordLatency() {
+            // Hedge delays and adaptive timeouts are based on single assessments only
+            if (TransactionResults.class.equals(clazz) && latencyRecorded.compareAndSet(false, true)) {
+                latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+        }
+    }
+
+    private static final class ResponseFuture<T> extends AbstractFuture<T> {
+
+        private volatile Future<Response> responseFuture;
+
+        private void setResponseFuture(final Future<Response> responseFuture) {
+            this.responseFuture = responseFuture;
+            // Cancelled while the request was being sent
+            if (isCancelled()) {
+                responseFuture.cancel(true);
+            }
+        }
+
+        @Override
+        protected boolean set(@Nullable final T value) {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(final Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            final Future<Response> currentResponseFuture = responseFuture;
+            if (cancelled && currentResponseFuture != null) {
+                // Abort the HTTP request
+                currentResponseFuture.cancel(true);
+            }
+            return cancelled;
+        }
+    }
 }
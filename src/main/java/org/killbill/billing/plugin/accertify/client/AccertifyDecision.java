@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Immutable, compact, view of the Accertify assessment of a transaction: cheap to keep around in caches and metrics.
+ */
+public final class AccertifyDecision {
+
+    // Missing or non-numeric total-score
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
+    private static final String RULES_SEPARATOR = ",";
+    private static final String[] NO_RULES = new String[0];
+
+    // The same few rule names are returned over and over: share the instances
+    private static final Interner<String> RULES = Interners.newWeakInterner();
+
+    private final Recommendation recommendation;
+    private final int totalScore;
+    private final String[] rulesTripped;
+
+    private AccertifyDecision(final Recommendation recommendation, final int totalScore, final String[] rulesTripped) {
+        this.recommendation = recommendation;
+        this.totalScore = totalScore;
+        this.rulesTripped = rulesTripped;
+    }
+
+    public static AccertifyDecision of(@Nullable final String recommendationCode, @Nullable final String totalScore, @Nullable final String rulesTripped) {
+        return new AccertifyDecision(Recommendation.fromCode(recommendationCode), parseScore(totalScore), parseRules(rulesTripped));
+    }
+
+    public Recommendation getRecommendation() {
+        return recommendation;
+    }
+
+    public boolean isReject() {
+        return recommendation == Recommendation.REJECT;
+    }
+
+    public boolean hasScore() {
+        return totalScore != NO_SCORE;
+    }
+
+    // NO_SCORE if unknown, see hasScore()
+    public int getTotalScore() {
+        return totalScore;
+    }
+
+    public int getNbRulesTripped() {
+        return rulesTripped.length;
+    }
+
+    public String getRuleTripped(final int i) {
+        return rulesTripped[i];
+    }
+
+    public List<String> getRulesTripped() {
+        return Arrays.asList(rulesTripped.clone());
+    }
+
+    private static int parseScore(@Nullable final String totalScore) {
+        if (Strings.isNullOrEmpty(totalScore)) {
+            return NO_SCORE;
+        }
+
+        try {
+            return Integer.parseInt(totalScore.trim());
+        } catch (final NumberFormatException e) {
+            return NO_SCORE;
+        }
+    }
+
+    // E.g. "Velocity check, Email domain"
+    private static String[] parseRules(@Nullable final String rulesTripped) {
+        if (Strings.isNullOrEmpty(rulesTripped)) {
+            return NO_RULES;
+        }
+
+        final List<String> rules = new ArrayList<String>();
+        for (final String rule : rulesTripped.split(RULES_SEPARATOR)) {
+            final String trimmedRule = rule.trim();
+            if (!trimmedRule.isEmpty()) {
+                rules.add(RULES.intern(trimmedRule));
+            }
+        }
+        return rules.isEmpty() ? NO_RULES : rules.toArray(new String[rules.size()]);
+    }
+
+    @Override
+    public String toString() {
+        return "AccertifyDecision{" +
+               "recommendation=" + recommendation +
+               ", totalScore=" + (hasScore() ? String.valueOf(totalScore) : "none") +
+               ", rulesTripped=" + Arrays.toString(rulesTripped) +
+               '}';
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final AccertifyDecision that = (AccertifyDecision) o;
+        return totalScore == that.totalScore &&
+               recommendation == that.recommendation &&
+               Arrays.equals(rulesTripped, that.rulesTripped);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = recommendation.hashCode();
+        result = 31 * result + totalScore;
+        result = 31 * result + Arrays.hashCode(rulesTripped);
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Request fields filled from the Kill Bill account, e.g. collectionTransaction->billingEmail=EMAIL.
+ * <p/>
+ * Values are converted to String, null values are skipped.
+ */
+public final class AccountFieldMapping {
+
+    public static final AccountFieldMapping EMPTY = new AccountFieldMapping(ImmutableMap.<RequestPath, AccountField>of());
+
+    public enum AccountField {
+        EXTERNAL_KEY {
+            @Override
+            Object getValue(final Account account) {
+                return account.getExternalKey();
+            }
+        },
+        NAME {
+            @Override
+            Object getValue(final Account account) {
+                return account.getName();
+            }
+        },
+        FIRST_NAME {
+            @Override
+            Object getValue(final Account account) {
+                final Integer firstNameLength = account.getFirstNameLength();
+                if (account.getName() == null || firstNameLength == null || firstNameLength > account.getName().length()) {
+                    return null;
+                }
+                return account.getName().substring(0, firstNameLength).trim();
+            }
+        },
+        LAST_NAME {
+            @Override
+            Object getValue(final Account account) {
+                final Integer firstNameLength = account.getFirstNameLength();
+                if (account.getName() == null || firstNameLength == null || firstNameLength > account.getName().length()) {
+                    return null;
+                }
+                return account.getName().substring(firstNameLength).trim();
+            }
+        },
+        EMAIL {
+            @Override
+            Object getValue(final Account account) {
+                return account.getEmail();
+            }
+        },
+        COMPANY_NAME {
+            @Override
+            Object getValue(final Account account) {
+                return account.getCompanyName();
+            }
+        },
+        ADDRESS1 {
+            @Override
+            Object getValue(final Account account) {
+                return account.getAddress1();
+            }
+        },
+        ADDRESS2 {
+            @Override
+            Object getValue(final Account account) {
+                return account.getAddress2();
+            }
+        },
+        CITY {
+            @Override
+            Object getValue(final Account account) {
+                return account.getCity();
+            }
+        },
+        STATE_OR_PROVINCE {
+            @Override
+            Object getValue(final Account account) {
+                return account.getStateOrProvince();
+            }
+        },
+        POSTAL_CODE {
+            @Override
+            Object getValue(final Account account) {
+                return account.getPostalCode();
+            }
+        },
+        COUNTRY {
+            @Override
+            Object getValue(final Account account) {
+                return account.getCountry();
+            }
+        },
+        PHONE {
+            @Override
+            Object getValue(final Account account) {
+                return account.getPhone();
+            }
+        },
+        CURRENCY {
+            @Override
+            Object getValue(final Account account) {
+                return account.getCurrency();
+            }
+        },
+        LOCALE {
+            @Override
+            Object getValue(final Account account) {
+                return account.getLocale();
+            }
+        };
+
+        @Nullable
+        abstract Object getValue(final Account account);
+    }
+
+    private final Map<RequestPath, AccountField> fields;
+
+    private AccountFieldMapping(final Map<RequestPath, AccountField> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @param mapping account field names (e.g. EMAIL), keyed by entry key (e.g. collectionTransaction->billingEmail)
+     * @return the compiled mapping
+     * @throws IllegalArgumentException if an account field is unknown
+     */
+    public static AccountFieldMapping compile(final Map<String, String> mapping) {
+        if (mapping.isEmpty()) {
+            return EMPTY;
+        }
+
+        final ImmutableMap.Builder<RequestPath, AccountField> fields = ImmutableMap.<RequestPath, AccountField>builder();
+        // Sorted, for a deterministic output regardless of the configuration order
+        for (final Map.Entry<String, String> entry : new TreeMap<String, String>(mapping).entrySet()) {
+            final AccountField accountField = AccountField.valueOf(entry.getValue().trim().toUpperCase(Locale.ENGLISH));
+            fields.put(RequestPath.compile(entry.getKey()), accountField);
+        }
+        return new AccountFieldMapping(fields.build());
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    public void addEntries(final Account account, final Collection<RequestEntry> entries) {
+        for (final Map.Entry<RequestPath, AccountField> field : fields.entrySet()) {
+            final Object value = field.getValue().getValue(account);
+            if (value != null) {
+                entries.add(new RequestEntry(field.getKey(), value.toString()));
+            }
+        }
+    }
+}
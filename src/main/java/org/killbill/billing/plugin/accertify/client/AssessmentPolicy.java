@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Per-tenant rules deciding, for each payment, whether Accertify should be called and its recommendation enforced,
+ * e.g. policy.01=transactionType:REFUND,VOID;maxAmount:0 -> SKIP.
+ * <p/>
+ * Rules are evaluated in key order (numeric keys in numeric order first, e.g. policy.2 before policy.10, then the
+ * other keys in string order), the first matching rule wins (policy.default otherwise). Conditions are
+ * transactionType, currency, plugin (payment plugin name), minAmount and maxAmount (both inclusive); a rule
+ * matches when all its conditions match. The rules are indexed by transaction type, so that only the relevant
+ * rules are evaluated, and the payment plugin is only looked up if a relevant rule has a plugin condition.
+ */
+public final class AssessmentPolicy {
+
+    public enum Action {
+        // Accertify isn't called
+        SKIP,
+        // Accertify is called and its response stored, the payment is never aborted
+        ASSESS_ONLY,
+        // Payments rejected by Accertify are aborted (for the plugins subject to automatic rejection)
+        ASSESS_AND_ENFORCE
+    }
+
+    public static final AssessmentPolicy DEFAULT = new AssessmentPolicy(new EnumMap<TransactionType, Rule[]>(TransactionType.class), new Rule[0], Action.ASSESS_AND_ENFORCE);
+
+    private static final String DEFAULT_KEY = "default";
+    private static final String ACTION_SEPARATOR = "->";
+    private static final Splitter CONDITIONS_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
+    private static final Splitter VALUES_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    // Numeric keys in numeric order (2 before 10), then the other keys in string order
+    private static final Comparator<String> RULE_KEY_ORDERING = new Comparator<String>() {
+        @Override
+        public int compare(final String key1, final String key2) {
+            final boolean numeric1 = isNumeric(key1);
+            final boolean numeric2 = isNumeric(key2);
+            if (numeric1 && numeric2) {
+                final int result = new BigInteger(key1).compareTo(new BigInteger(key2));
+                // E.g. 1 and 01
+                return result != 0 ? result : key1.compareTo(key2);
+            } else if (numeric1 != numeric2) {
+                return numeric1 ? -1 : 1;
+            } else {
+                return key1.compareTo(key2);
+            }
+        }
+    };
+
+    private final Map<TransactionType, Rule[]> rulesByTransactionType;
+    // Rules without transactionType condition, for payments without transaction type
+    private final Rule[] untypedRules;
+    private final Action defaultAction;
+
+    private AssessmentPolicy(final Map<TransactionType, Rule[]> rulesByTransactionType, final Rule[] untypedRules, final Action defaultAction) {
+        this.rulesByTransactionType = rulesByTransactionType;
+        this.untypedRules = untypedRules;
+        this.defaultAction = defaultAction;
+    }
+
+    /**
+     * @param rules rules (e.g. transactionType:REFUND -> SKIP), keyed by rule key (e.g. 01), and the default action keyed by default
+     * @return the compiled policy
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static AssessmentPolicy compile(final Map<String, String> rules) {
+        if (rules.isEmpty()) {
+            return DEFAULT;
+        }
+
+        final Action defaultAction = rules.containsKey(DEFAULT_KEY) ? parseAction(rules.get(DEFAULT_KEY)) : Action.ASSESS_AND_ENFORCE;
+
+        final List<Rule> compiledRules = new ArrayList<Rule>();
+        final Map<String, String> sortedRules = new TreeMap<String, String>(RULE_KEY_ORDERING);
+        sortedRules.putAll(rules);
+        for (final Map.Entry<String, String> entry : sortedRules.entrySet()) {
+            if (!DEFAULT_KEY.equals(entry.getKey())) {
+                compiledRules.add(Rule.compile(entry.getValue()));
+            }
+        }
+
+        final Map<TransactionType, Rule[]> rulesByTransactionType = new EnumMap<TransactionType, Rule[]>(TransactionType.class);
+        for (final TransactionType transactionType : TransactionType.values()) {
+            final List<Rule> transactionTypeRules = new ArrayList<Rule>();
+            for (final Rule rule : compiledRules) {
+                if (rule.transactionTypes.contains(transactionType)) {
+                    transactionTypeRules.add(rule);
+                }
+            }
+            rulesByTransactionType.put(transactionType, transactionTypeRules.toArray(new Rule[transactionTypeRules.size()]));
+        }
+
+        final List<Rule> untypedRules = new ArrayList<Rule>();
+        for (final Rule rule : compiledRules) {
+            if (rule.transactionTypes.size() == TransactionType.values().length) {
+                untypedRules.add(rule);
+            }
+        }
+
+        return new AssessmentPolicy(rulesByTransactionType, untypedRules.toArray(new Rule[untypedRules.size()]), defaultAction);
+    }
+
+    public Action decide(@Nullable final TransactionType transactionType,
+                         @Nullable final BigDecimal amount,
+                         @Nullable final Currency currency,
+                         final Supplier<String> pluginName) {
+        final Rule[] rules = transactionType == null ? untypedRules : rulesByTransactionType.get(transactionType);
+        if (rules == null) {
+            return defaultAction;
+        }
+        for (final Rule rule : rules) {
+            if (rule.matches(amount, currency, pluginName)) {
+                return rule.action;
+            }
+        }
+        return defaultAction;
+    }
+
+    private static boolean isNumeric(final String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Action parseAction(final String action) {
+        return Action.valueOf(action.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    private static final class Rule {
+
+        private final Set<TransactionType> transactionTypes;
+        // Null if any
+        private final Set<Currency> currencies;
+        private final Set<String> plugins;
+        private final BigDecimal minAmount;
+        private final BigDecimal maxAmount;
+        private final Action action;
+
+        private Rule(final Set<TransactionType> transactionTypes,
+                     @Nullable final Set<Currency> currencies,
+                     @Nullable final Set<String> plugins,
+                     @Nullable final BigDecimal minAmount,
+                     @Nullable final BigDecimal maxAmount,
+                     final Action action) {
+            this.transactionTypes = transactionTypes;
+            this.currencies = currencies;
+            this.plugins = plugins;
+            this.minAmount = minAmount;
+            this.maxAmount = maxAmount;
+            this.action = action;
+        }
+
+        private static Rule compile(final String rule) {
+            final int actionIndex = rule.lastIndexOf(ACTION_SEPARATOR);
+            if (actionIndex == -1) {
+                throw new IllegalArgumentException("Missing action in policy rule " + rule);
+            }
+            final Action action = parseAction(rule.substring(actionIndex + ACTION_SEPARATOR.length()));
+
+            Set<TransactionType> transactionTypes = EnumSet.allOf(TransactionType.class);
+            Set<Currency> currencies = null;
+            Set<String> plugins = null;
+            BigDecimal minAmount = null;
+            BigDecimal maxAmount = null;
+            for (final String condition : CONDITIONS_SPLITTER.split(rule.substring(0, actionIndex))) {
+                final int nameIndex = condition.indexOf(':');
+                if (nameIndex == -1) {
+                    throw new IllegalArgumentException("Invalid condition " + condition + " in policy rule " + rule);
+                }
+                final String name = condition.substring(0, nameIndex).trim();
+                final String values = condition.substring(nameIndex + 1);
+                if ("transactionType".equals(name)) {
+                    transactionTypes = EnumSet.noneOf(TransactionType.class);
+                    for (final String value : VALUES_SPLITTER.split(values)) {
+                        transactionTypes.add(TransactionType.valueOf(value.toUpperCase(Locale.ENGLISH)));
+                    }
+                } else if ("currency".equals(name)) {
+                    final ImmutableSet.Builder<Currency> builder = ImmutableSet.<Currency>builder();
+                    for (final String value : VALUES_SPLITTER.split(values)) {
+                        builder.add(Currency.valueOf(value.toUpperCase(Locale.ENGLISH)));
+                    }
+                    currencies = builder.build();
+                } else if ("plugin".equals(name)) {
+                    plugins = ImmutableSet.<String>copyOf(VALUES_SPLITTER.split(values));
+                } else if ("minAmount".equals(name)) {
+                    minAmount = new BigDecimal(values.trim());
+                } else if ("maxAmount".equals(name)) {
+                    maxAmount = new BigDecimal(values.trim());
+                } else {
+                    throw new IllegalArgumentException("Unknown condition " + name + " in policy rule " + rule);
+                }
+            }
+            return new Rule(transactionTypes, currencies, plugins, minAmount, maxAmount, action);
+        }
+
+        private boolean matches(@Nullable final BigDecimal amount, @Nullable final Currency currency, final Supplier<String> pluginName) {
+            if (currencies != null && (currency == null || !currencies.contains(currency))) {
+                return false;
+            }
+            if (minAmount != null && (amount == null || amount.compareTo(minAmount) < 0)) {
+                return false;
+            }
+            if (maxAmount != null && (amount == null || amount.compareTo(maxAmount) > 0)) {
+                return false;
+            }
+            // Last, as it may require a lookup
+            return plugins == null || plugins.contains(pluginName.get());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.IOException;
+
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.Response;
+
+/**
+ * Accumulates the response, failing as soon as the body exceeds the maximum size
+ * (announced by the Content-Length header, or actually received).
+ */
+class BoundedResponseHandler extends AsyncCompletionHandler<Response> {
+
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
+    private final long maxBodySize;
+
+    private long bodySize = 0;
+
+    BoundedResponseHandler(final long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    public STATE onHeadersReceived(final HttpResponseHeaders headers) throws Exception {
+        final String contentLength = headers.getHeaders().getFirstValue(CONTENT_LENGTH_HEADER);
+        if (contentLength != null) {
+            try {
+                checkBodySize(Long.parseLong(contentLength.trim()));
+            } catch (final NumberFormatException ignored) {
+                // Checked while receiving the body
+            }
+        }
+        return super.onHeadersReceived(headers);
+    }
+
+    @Override
+    public STATE onBodyPartReceived(final HttpResponseBodyPart content) throws Exception {
+        bodySize += content.length();
+        checkBodySize(bodySize);
+        return super.onBodyPartReceived(content);
+    }
+
+    @Override
+    public Response onCompleted(final Response response) throws Exception {
+        return response;
+    }
+
+    private void checkBodySize(final long size) throws IOException {
+        if (size > maxBodySize) {
+            throw new ResponseTooLargeException("Accertify response exceeds the maximum size of " + maxBodySize + " bytes");
+        }
+    }
+
+    static final class ResponseTooLargeException extends IOException {
+
+        ResponseTooLargeException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Per tenant circuit breaker around the Accertify calls.
+ * <p/>
+ * The outcome of the last windowSize calls is tracked, errors and calls slower than slowCallThresholdMs being failures
+ * (cancelled calls, e.g. when the latency budget is exhausted, are ignored unless they were already slow).
+ * When the failure rate of a full window reaches failureRateThreshold, the circuit opens: calls fail immediately
+ * with a CircuitBreakerOpenException for openDurationMs. The circuit is then half-open: calls are let through
+ * one at a time, HALF_OPEN_PROBES successful ones close it again, a failed one re-opens it.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    static final int HALF_OPEN_PROBES = 3;
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long slowCallThresholdMs;
+    private final long openDurationNanos;
+    private final Ticker ticker;
+
+    // Guarded by this
+    private final boolean[] window;
+    private int windowIndex;
+    private int nbCalls;
+    private int nbFailures;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private int nbSuccessfulProbes;
+
+    public CircuitBreaker(final int windowSize, final double failureRateThreshold, final long slowCallThresholdMs, final long openDurationMs) {
+        this(windowSize, failureRateThreshold, slowCallThresholdMs, openDurationMs, Ticker.systemTicker());
+    }
+
+    CircuitBreaker(final int windowSize, final double failureRateThreshold, final long slowCallThresholdMs, final long openDurationMs, final Ticker ticker) {
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdMs = slowCallThresholdMs;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.ticker = ticker;
+        this.window = new boolean[windowSize];
+    }
+
+    public <T> ListenableFuture<T> execute(final Supplier<ListenableFuture<T>> call) {
+        final State acquiredState = tryAcquire();
+        if (acquiredState == State.OPEN) {
+            return Futures.immediateFailedFuture(new CircuitBreakerOpenException("Accertify circuit breaker is open"));
+        }
+
+        final long startNanos = ticker.read();
+        final ListenableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (final RuntimeException e) {
+            // E.g. closed HTTP client: releases the half-open probe
+            onCompleted(acquiredState, false, 0);
+            throw e;
+        }
+
+        Futures.addCallback(future,
+                            new FutureCallback<T>() {
+                                @Override
+                                public void onSuccess(@Nullable final T result) {
+                                    onCompleted(acquiredState, true, TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos));
+                                }
+
+                                @Override
+                                public void onFailure(final Throwable t) {
+                                    final long latencyMs = TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos);
+                                    if (t instanceof CancellationException) {
+                                        // Latency budget exhausted or losing hedge (client side)
+                                        onCancelled(acquiredState, latencyMs);
+                                    } else {
+                                        onCompleted(acquiredState, false, latencyMs);
+                                    }
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+        return future;
+    }
+
+    public synchronized State getState() {
+        maybeHalfOpen();
+        return state;
+    }
+
+    // State the call is made in, OPEN if it isn't permitted
+    synchronized State tryAcquire() {
+        maybeHalfOpen();
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return State.OPEN;
+            }
+            probeInFlight = true;
+        }
+        return state;
+    }
+
+    synchronized void onCompleted(final State acquiredState, final boolean success, final long latencyMs) {
+        // Ignore the calls made before the last transition
+        if (acquiredState != state) {
+            return;
+        }
+
+        final boolean failure = !success || latencyMs >= slowCallThresholdMs;
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (failure) {
+                open();
+            } else if (++nbSuccessfulProbes >= HALF_OPEN_PROBES) {
+                close();
+            }
+            return;
+        }
+
+        if (window[windowIndex] && nbCalls == windowSize) {
+            nbFailures--;
+        }
+        window[windowIndex] = failure;
+        windowIndex = (windowIndex + 1) % windowSize;
+        nbCalls = Math.min(nbCalls + 1, windowSize);
+        if (failure) {
+            nbFailures++;
+        }
+
+        if (nbCalls == windowSize && nbFailures >= failureRateThreshold * windowSize) {
+            open();
+        }
+    }
+
+    synchronized void onCancelled(final State acquiredState, final long latencyMs) {
+        if (latencyMs >= slowCallThresholdMs) {
+            // Already a slow call, whatever the outcome would have been
+            onCompleted(acquiredState, true, latencyMs);
+            return;
+        }
+
+        // Not an Accertify failure, and the outcome of the probe is unknown: let another call probe
+        if (acquiredState == state && state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    private void maybeHalfOpen() {
+        if (state == State.OPEN && ticker.read() - openedAtNanos >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+            nbSuccessfulProbes = 0;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = ticker.read();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        nbCalls = 0;
+        nbFailures = 0;
+    }
+}
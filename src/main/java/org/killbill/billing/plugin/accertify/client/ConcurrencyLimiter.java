@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Per configuration limit of the concurrent Accertify calls, so that a tenant with its own configuration can't
+ * monopolize the shared connections (the tenants using the global configuration share its limiter).
+ * Calls over the limit fail immediately with a ConcurrencyLimitExceededException (they aren't queued).
+ * <p/>
+ * The limit adapts to the observed latency (AIMD): it is decreased by BACKOFF_RATIO when a call fails or is slower
+ * than LATENCY_TOLERANCE times the baseline latency, and increased by one every limit successful calls otherwise
+ * (as long as the limit is used), between minLimit and maxLimit. Cancelled calls only count when they were already slow. The baseline is the lowest latency observed,
+ * slowly drifting towards the latencies above it so that it follows durable changes.
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+
+    static final double BACKOFF_RATIO = 0.9;
+    static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Ticker ticker;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyMs = -1;
+    private long nbAccepted;
+    private long nbRejected;
+
+    public ConcurrencyLimiter(final int minLimit, final int maxLimit) {
+        this(minLimit, maxLimit, Ticker.systemTicker());
+    }
+
+    ConcurrencyLimiter(final int minLimit, final int maxLimit, final Ticker ticker) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.ticker = ticker;
+        this.limit = this.maxLimit;
+    }
+
+    public <T> ListenableFuture<T> execute(final Supplier<ListenableFuture<T>> call) {
+        if (!tryAcquire()) {
+            return Futures.immediateFailedFuture(new ConcurrencyLimitExceededException("Too many concurrent Accertify calls (limit " + getLimit() + ")"));
+        }
+
+        final long startNanos = ticker.read();
+        final ListenableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (final RuntimeException e) {
+            release(false, 0);
+            throw e;
+        }
+
+        Futures.addCallback(future,
+                            new FutureCallback<T>() {
+                                @Override
+                                public void onSuccess(@Nullable final T result) {
+                                    release(true, TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos));
+                                }
+
+                                @Override
+                                public void onFailure(final Throwable t) {
+                                    final long latencyMs = TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos);
+                                    if (t instanceof AccertifyNotCalledException) {
+                                        // E.g. open circuit breaker: no signal
+                                        releaseWithoutSample();
+                                    } else if (t instanceof CancellationException) {
+                                        // Latency budget exhausted or losing hedge (client side)
+                                        releaseCancelled(latencyMs);
+                                    } else {
+                                        release(false, latencyMs);
+                                    }
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+        return future;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            nbRejected++;
+            return false;
+        }
+        inFlight++;
+        nbAccepted++;
+        return true;
+    }
+
+    synchronized void release(final boolean success, final long latencyMs) {
+        // Only grow the limit when it's actually used
+        final boolean limitUsed = inFlight * 2 >= (int) limit;
+        inFlight--;
+
+        if (success) {
+            if (baselineLatencyMs < 0 || latencyMs < baselineLatencyMs) {
+                baselineLatencyMs = latencyMs;
+            } else {
+                baselineLatencyMs += (latencyMs - baselineLatencyMs) * BASELINE_DRIFT;
+            }
+        }
+
+        if (!success || latencyMs > LATENCY_TOLERANCE * Math.max(1, baselineLatencyMs)) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (limitUsed) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    synchronized void releaseCancelled(final long latencyMs) {
+        if (baselineLatencyMs >= 0 && latencyMs > LATENCY_TOLERANCE * Math.max(1, baselineLatencyMs)) {
+            // Already a slow call, whatever the outcome would have been
+            release(false, latencyMs);
+        } else {
+            releaseWithoutSample();
+        }
+    }
+
+    private synchronized void releaseWithoutSample() {
+        inFlight--;
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized long getBaselineLatencyMs() {
+        return (long) baselineLatencyMs;
+    }
+
+    @Override
+    public synchronized long getNbAccepted() {
+        return nbAccepted;
+    }
+
+    @Override
+    public synchronized long getNbRejected() {
+        return nbRejected;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JMX registration of the ConcurrencyLimiter instances, as
+ * org.killbill.billing.plugin.accertify:type=ConcurrencyLimiter,tenant=[kbTenantId or default]
+ * (default being the limiter of the global configuration, shared by the tenants without their own).
+ * <p/>
+ * The limiter of a tenant is replaced when its configuration changes, and all of them are unregistered
+ * when the plugin stops (see unregisterAll()).
+ */
+public final class ConcurrencyLimiterMBeans {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiterMBeans.class);
+
+    private static final String OBJECT_NAME_PREFIX = "org.killbill.billing.plugin.accertify:type=ConcurrencyLimiter,tenant=";
+    private static final String DEFAULT_TENANT = "default";
+
+    // Writes are synchronized
+    private static final Map<String, ConcurrencyLimiter> REGISTERED_LIMITERS = new ConcurrentHashMap<String, ConcurrencyLimiter>();
+
+    private ConcurrencyLimiterMBeans() {}
+
+    // Called on every assessment: cheap when the limiter is already registered
+    public static void register(@Nullable final UUID kbTenantId, final ConcurrencyLimiter limiter) {
+        final String tenant = kbTenantId == null ? DEFAULT_TENANT : kbTenantId.toString();
+        if (REGISTERED_LIMITERS.get(tenant) == limiter) {
+            return;
+        }
+
+        synchronized (REGISTERED_LIMITERS) {
+            if (REGISTERED_LIMITERS.get(tenant) == limiter) {
+                return;
+            }
+
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                final ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + tenant);
+                if (mBeanServer.isRegistered(objectName)) {
+                    mBeanServer.unregisterMBean(objectName);
+                }
+                mBeanServer.registerMBean(limiter, objectName);
+            } catch (final JMException e) {
+                logger.warn("Unable to register the Accertify concurrency limiter MBean for tenant {}", tenant, e);
+            }
+            // Don't retry on every call
+            REGISTERED_LIMITERS.put(tenant, limiter);
+        }
+    }
+
+    public static void unregisterAll() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        synchronized (REGISTERED_LIMITERS) {
+            for (final String tenant : REGISTERED_LIMITERS.keySet()) {
+                try {
+                    final ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + tenant);
+                    if (mBeanServer.isRegistered(objectName)) {
+                        mBeanServer.unregisterMBean(objectName);
+                    }
+                } catch (final JMException e) {
+                    logger.warn("Unable to unregister the Accertify concurrency limiter MBean for tenant {}", tenant, e);
+                }
+            }
+            REGISTERED_LIMITERS.clear();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Assessment sent a second time if the first attempt hasn't completed after the hedge delay: the first
+ * successful attempt wins (see TransactionResults#getAttempt()) and the other one is cancelled.
+ * <p/>
+ * The assessment fails as soon as all the attempts sent have failed (the hedge isn't sent after a failure).
+ */
+class HedgedAssessment extends AbstractFuture<TransactionResults> {
+
+    private static final int HEDGE_ATTEMPT = 2;
+
+    private final Supplier<ListenableFuture<TransactionResults>> request;
+    private final HedgingPolicy policy;
+    // Guarded by this
+    private final List<Future<?>> pendingFutures = new ArrayList<Future<?>>(3);
+    private int pendingAttempts;
+
+    private HedgedAssessment(final Supplier<ListenableFuture<TransactionResults>> request, final HedgingPolicy policy) {
+        this.request = request;
+        this.policy = policy;
+    }
+
+    static ListenableFuture<TransactionResults> start(final Supplier<ListenableFuture<TransactionResults>> request,
+                                                      final HedgingPolicy policy,
+                                                      final ScheduledExecutorService scheduler) {
+        final long hedgeDelayMs = policy.onAssessment();
+        if (hedgeDelayMs < 0) {
+            return request.get();
+        }
+
+        final HedgedAssessment assessment = new HedgedAssessment(request, policy);
+        assessment.sendAttempt(1);
+        assessment.scheduleHedge(scheduler, hedgeDelayMs);
+        return assessment;
+    }
+
+    private void scheduleHedge(final ScheduledExecutorService scheduler, final long hedgeDelayMs) {
+        final Future<?> hedge = scheduler.schedule(new Runnable() {
+                                                       @Override
+                                                       public void run() {
+                                                           if (!isDone() && policy.tryAcquireHedge()) {
+                                                               sendAttempt(HEDGE_ATTEMPT);
+                                                           }
+                                                       }
+                                                   },
+                                                   hedgeDelayMs,
+                                                   TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            if (isDone()) {
+                hedge.cancel(false);
+            } else {
+                pendingFutures.add(hedge);
+            }
+        }
+    }
+
+    private void sendAttempt(final int attempt) {
+        final ListenableFuture<TransactionResults> future = request.get();
+        synchronized (this) {
+            if (isDone()) {
+                future.cancel(true);
+                return;
+            }
+            pendingFutures.add(future);
+            pendingAttempts++;
+        }
+
+        Futures.addCallback(future,
+                            new FutureCallback<TransactionResults>() {
+                                @Override
+                                public void onSuccess(@Nullable final TransactionResults result) {
+                                    if (result != null) {
+                                        result.setAttempt(attempt);
+                                    }
+                                    if (set(result)) {
+                                        cancelPendingFutures();
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(final Throwable t) {
+                                    final boolean allAttemptsFailed;
+                                    synchronized (HedgedAssessment.this) {
+                                        pendingAttempts--;
+                                        allAttemptsFailed = pendingAttempts == 0;
+                                    }
+                                    if (allAttemptsFailed && setException(t)) {
+                                        cancelPendingFutures();
+                                    }
+                                }
+                            },
+                            MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            cancelPendingFutures();
+        }
+        return cancelled;
+    }
+
+    private void cancelPendingFutures() {
+        final List<Future<?>> futures;
+        synchronized (this) {
+            futures = new ArrayList<Future<?>>(pendingFutures);
+            pendingFutures.clear();
+        }
+        for (final Future<?> future : futures) {
+            // No-op for the winning attempt
+            future.cancel(true);
+        }
+    }
+}
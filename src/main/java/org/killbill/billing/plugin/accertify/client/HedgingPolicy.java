@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+/**
+ * Per tenant hedging settings and state, see HedgedAssessment.
+ * <p/>
+ * The hedge delay is the configured percentile of the observed latencies (at least minDelayMs), and hedges
+ * are capped to maxRatio of the assessments: each assessment earns maxRatio credit (up to MAX_CREDITS,
+ * to absorb bursts of slow responses), each hedge costs one.
+ */
+public class HedgingPolicy {
+
+    // Don't hedge before the percentile is meaningful
+    static final long MIN_SAMPLES = 100;
+    private static final double MAX_CREDITS = 10;
+
+    private final double delayPercentile;
+    private final long minDelayMs;
+    private final double maxRatio;
+    private final LatencyHistogram latencies;
+
+    private double credits;
+
+    public HedgingPolicy(final double delayPercentile, final long minDelayMs, final double maxRatio, final LatencyHistogram latencies) {
+        this.delayPercentile = delayPercentile;
+        this.minDelayMs = minDelayMs;
+        this.maxRatio = maxRatio;
+        this.latencies = latencies;
+    }
+
+    /**
+     * Called once per assessment.
+     *
+     * @return the delay after which the assessment should be hedged, or -1 if it shouldn't
+     */
+    public long onAssessment() {
+        synchronized (this) {
+            credits = Math.min(MAX_CREDITS, credits + maxRatio);
+        }
+
+        if (latencies.getTotalCount() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(minDelayMs, latencies.getPercentileMs(delayPercentile));
+    }
+
+    // Called when the hedge delay has elapsed
+    public synchronized boolean tryAcquireHedge() {
+        if (credits < 1) {
+            return false;
+        }
+        credits -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+
+/**
+ * HTTP clients shared by all the tenant AccertifyClient instances, one per (Accertify host, proxy, strictSSL) key:
+ * each has its own pool of keep-alive connections and SSL context (so TLS sessions are reused across tenants).
+ * Credentials and URLs are set per request.
+ * <p/>
+ * There are only a handful of distinct keys, so clients are kept until the plugin stops (see closeAll()).
+ * <p/>
+ * A single timer thread is also shared for the delayed work of the clients (e.g. hedged requests).
+ */
+public final class HttpTransports {
+
+    private static final String USER_AGENT = "KillBill/1.0";
+
+    private static final Map<TransportKey, AsyncHttpClient> CLIENTS = new HashMap<TransportKey, AsyncHttpClient>();
+
+    // Guarded by CLIENTS
+    private static ScheduledExecutorService scheduler;
+
+    private HttpTransports() {}
+
+    static AsyncHttpClient get(@Nullable final String url, @Nullable final String proxyHost, @Nullable final Integer proxyPort, final boolean strictSSL) {
+        final TransportKey key = new TransportKey(getHost(url), proxyHost, proxyPort, strictSSL);
+        synchronized (CLIENTS) {
+            AsyncHttpClient client = CLIENTS.get(key);
+            if (client == null || client.isClosed()) {
+                client = createClient(strictSSL);
+                CLIENTS.put(key, client);
+            }
+            return client;
+        }
+    }
+
+    // Tasks must be short and non-blocking
+    static ScheduledExecutorService getScheduler() {
+        synchronized (CLIENTS) {
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("accertify-scheduler-%d")
+                                                                                                 .setDaemon(true)
+                                                                                                 .build());
+            }
+            return scheduler;
+        }
+    }
+
+    public static void closeAll() {
+        synchronized (CLIENTS) {
+            for (final AsyncHttpClient client : CLIENTS.values()) {
+                client.close();
+            }
+            CLIENTS.clear();
+
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    static int size() {
+        synchronized (CLIENTS) {
+            return CLIENTS.size();
+        }
+    }
+
+    private static AsyncHttpClient createClient(final boolean strictSSL) {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder().setUserAgent(USER_AGENT)
+                                                                                .setAllowPoolingConnections(true)
+                                                                                .setAllowPoolingSslConnections(true)
+                                                                                .setAcceptAnyCertificate(!strictSSL)
+                                                                                .build();
+        return new AsyncHttpClient(config);
+    }
+
+    // E.g. https://accertify.example.com:443
+    private static String getHost(@Nullable final String url) {
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            final URL parsedUrl = new URL(url);
+            final int port = parsedUrl.getPort() == -1 ? parsedUrl.getDefaultPort() : parsedUrl.getPort();
+            return parsedUrl.getProtocol() + "://" + parsedUrl.getHost() + ":" + port;
+        } catch (final MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static final class TransportKey {
+
+        private final String host;
+        private final String proxyHost;
+        private final Integer proxyPort;
+        private final boolean strictSSL;
+
+        private TransportKey(@Nullable final String host, @Nullable final String proxyHost, @Nullable final Integer proxyPort, final boolean strictSSL) {
+            this.host = host;
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            this.strictSSL = strictSSL;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final TransportKey that = (TransportKey) o;
+            return strictSSL == that.strictSSL &&
+                   (host != null ? host.equals(that.host) : that.host == null) &&
+                   (proxyHost != null ? proxyHost.equals(that.proxyHost) : that.proxyHost == null) &&
+                   (proxyPort != null ? proxyPort.equals(that.proxyPort) : that.proxyPort == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = host != null ? host.hashCode() : 0;
+            result = 31 * result + (proxyHost != null ? proxyHost.hashCode() : 0);
+            result = 31 * result + (proxyPort != null ? proxyPort.hashCode() : 0);
+            result = 31 * result + (strictSSL ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Latency histogram over a sliding window, with buckets growing by 10% (so percentiles are accurate to 10%).
+ * <p/>
+ * The window is made of nbSlices slices, the oldest one being reset when the window moves: percentiles are
+ * computed over the last windowMs (at least windowMs * (nbSlices - 1) / nbSlices). Recording is lock-free,
+ * except when a slice is reset.
+ * <p/>
+ * Latencies above the last bucket (the maximum HTTP timeout) are recorded in the last bucket.
+ */
+public class LatencyHistogram {
+
+    static final long DEFAULT_WINDOW_MS = 60 * 1000;
+    static final int DEFAULT_NB_SLICES = 6;
+
+    private static final double BUCKET_GROWTH = 1.1;
+    private static final long MAX_TRACKABLE_LATENCY_MS = 120 * 1000;
+
+    // Upper bounds of the buckets, in milliseconds: 1, 2, 3, ..., 10, 11, 13, 15, ...
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = computeBucketUpperBounds();
+
+    private final long sliceNanos;
+    private final Slice[] slices;
+    private final Ticker ticker;
+    private final long startNanos;
+
+    public LatencyHistogram() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_NB_SLICES, Ticker.systemTicker());
+    }
+
+    LatencyHistogram(final long windowMs, final int nbSlices, final Ticker ticker) {
+        this.sliceNanos = TimeUnit.MILLISECONDS.toNanos(windowMs) / nbSlices;
+        this.slices = new Slice[nbSlices];
+        for (int i = 0; i < nbSlices; i++) {
+            slices[i] = new Slice();
+        }
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+    }
+
+    public void record(final long latencyMs) {
+        final long epoch = currentEpoch();
+        final Slice slice = slices[(int) (epoch % slices.length)];
+        if (slice.epoch != epoch) {
+            slice.reset(epoch);
+        }
+        slice.counts.incrementAndGet(bucketIndex(latencyMs));
+        slice.totalCount.incrementAndGet();
+    }
+
+    public long getTotalCount() {
+        final long epoch = currentEpoch();
+        long totalCount = 0;
+        for (final Slice slice : slices) {
+            if (isInWindow(slice, epoch)) {
+                totalCount += slice.totalCount.get();
+            }
+        }
+        return totalCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket the percentile falls into, or -1 if nothing was recorded in the window
+     */
+    public long getPercentileMs(final double percentile) {
+        final long epoch = currentEpoch();
+        final long[] counts = new long[BUCKET_UPPER_BOUNDS_MS.length];
+        long total = 0;
+        for (final Slice slice : slices) {
+            if (!isInWindow(slice, epoch)) {
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                final long count = slice.counts.get(i);
+                counts[i] += count;
+                total += count;
+            }
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= rank) {
+                return BUCKET_UPPER_BOUNDS_MS[i];
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MS[BUCKET_UPPER_BOUNDS_MS.length - 1];
+    }
+
+    private long currentEpoch() {
+        return (ticker.read() - startNanos) / sliceNanos;
+    }
+
+    private boolean isInWindow(final Slice slice, final long currentEpoch) {
+        return currentEpoch - slice.epoch < slices.length;
+    }
+
+    private static int bucketIndex(final long latencyMs) {
+        // Binary search of the first upper bound >= latencyMs
+        int low = 0;
+        int high = BUCKET_UPPER_BOUNDS_MS.length - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (BUCKET_UPPER_BOUNDS_MS[middle] < latencyMs) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] computeBucketUpperBounds() {
+        int nbBuckets = 0;
+        final long[] upperBounds = new long[256];
+        long upperBound = 1;
+        while (true) {
+            upperBounds[nbBuckets++] = upperBound;
+            if (upperBound >= MAX_TRACKABLE_LATENCY_MS) {
+                break;
+            }
+            upperBound = Math.max(upperBound + 1, (long) Math.ceil(upperBound * BUCKET_GROWTH));
+        }
+
+        final long[] result = new long[nbBuckets];
+        System.arraycopy(upperBounds, 0, result, 0, nbBuckets);
+        return result;
+    }
+
+    private static final class Slice {
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MS.length);
+        private final AtomicLong totalCount = new AtomicLong();
+        // Long.MIN_VALUE / 2: never in the window until first used
+        private volatile long epoch = Long.MIN_VALUE / 2;
+
+        private synchronized void reset(final long newEpoch) {
+            if (epoch == newEpoch) {
+                // Reset by another thread
+                return;
+            }
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            totalCount.set(0);
+            epoch = newEpoch;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import javax.annotation.Nullable;
+
+public enum Recommendation {
+    ACCEPT,
+    REVIEW,
+    REJECT,
+    // Missing, or not a code known by the plugin
+    UNKNOWN;
+
+    // values() allocates a new array on every call
+    private static final Recommendation[] RECOMMENDATIONS = values();
+
+    // Exact (case-sensitive) match, so that only REJECT aborts payments
+    public static Recommendation fromCode(@Nullable final String recommendationCode) {
+        if (recommendationCode == null) {
+            return UNKNOWN;
+        }
+
+        // Avoid valueOf and its exception on unknown codes
+        for (final Recommendation recommendation : RECOMMENDATIONS) {
+            if (recommendation != UNKNOWN && recommendation.name().equals(recommendationCode)) {
+                return recommendation;
+            }
+        }
+        return UNKNOWN;
+    }
+}
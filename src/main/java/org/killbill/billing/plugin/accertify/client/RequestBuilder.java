@@ -17,97 +17,226 @@
 
 package org.killbill.billing.plugin.accertify.client;
 
-import java.util.Arrays;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Preconditions;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 public class RequestBuilder {
 
-    private static final Pattern SUBTREE_LIST_PATTERN = Pattern.compile("(.*)\\[([0-9]+)\\]");
+    // Buffers larger than this aren't kept around after a build: the Kill Bill threads keep them for their lifetime
+    private static final int MAX_POOLED_BUFFER_SIZE = 32 * 1024;
 
-    private final ObjectMapper mapper;
+    // Reusable per-thread buffers for buildAsBytes(), only used during the build (the returned array is a copy)
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS = new ThreadLocal<ByteArrayOutputStream>() {
+        @Override
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream(8192);
+        }
+    };
+
+    public enum Mode {
+        // Build a Transaction / Map tree, serialized by Jackson
+        TREE,
+        // Write the document directly with the StAX writer, see StreamingRequestWriter
+        STREAMING
+    }
+
+    private final Mode mode;
+    private final RequestOrdering ordering;
+    private final ObjectWriter writer;
     private final Transactions transactions;
+    // One list of entries per transaction, for the streaming mode
+    private final List<List<RequestEntry>> entries;
+    // Static fragment of each transaction (or null), for the streaming mode
+    private final List<StaticRequestFragment> staticFragments;
 
     public RequestBuilder() {
-        this.mapper = XmlMapperProvider.get();
+        this(Mode.TREE);
+    }
+
+    public RequestBuilder(final Mode mode) {
+        this(mode, RequestOrdering.SORTED);
+    }
+
+    public RequestBuilder(final Mode mode, final RequestOrdering ordering) {
+        this.mode = mode;
+        this.ordering = ordering;
+        this.writer = XmlMapperProvider.getTransactionsWriter(ordering);
         this.transactions = new Transactions();
+        this.entries = new ArrayList<List<RequestEntry>>();
+        this.staticFragments = new ArrayList<StaticRequestFragment>();
     }
 
-    public RequestBuilder addTransactionEntry(final String entryKey, @Nullable final Object entryValue) {
-        // entryKey is something like ipAddress or collectionTransaction->billingFirstName or orderDetails->orderDetail[1]->shippingName
-        final String[] hierarchy = entryKey.split("->");
-        putDataInSubTree(hierarchy, entryValue, getOrCreateTransaction());
+    /**
+     * Start a new transaction: subsequent entries are added to it.
+     * The first transaction is created implicitly, this is only needed to send multiple transactions in one request.
+     *
+     * @return this builder
+     */
+    public RequestBuilder addTransaction() {
+        if (mode == Mode.STREAMING) {
+            entries.add(new ArrayList<RequestEntry>());
+            staticFragments.add(null);
+        } else {
+            transactions.getTransactions().add(new Transaction());
+        }
         return this;
     }
 
-    private void putDataInSubTree(final String[] hierarchy, final Object entryValue, final Map<String, Object> tree) {
-        Preconditions.checkState(hierarchy.length >= 1, "Invalid hierarchy " + Arrays.toString(hierarchy) + " for value " + entryValue + " and tree " + tree);
-        if (hierarchy.length == 1) {
-            tree.put(hierarchy[0], entryValue);
-            return;
+    /**
+     * Add the static fields of the tenant to the current transaction. This must be called before adding the transaction entries:
+     * on conflict, the transaction entries take precedence.
+     *
+     * @param staticFragment the static fields, if any
+     * @return this builder
+     */
+    public RequestBuilder addStaticFragment(@Nullable final StaticRequestFragment staticFragment) {
+        if (staticFragment == null || staticFragment.isEmpty()) {
+            return this;
         }
 
-        final Map<String, Object> subTree;
-        final String[] subHierarchy;
+        if (mode == Mode.STREAMING) {
+            // Resolved at build time, once all the transaction entries are known
+            getOrCreateTransactionEntries();
+            staticFragments.set(staticFragments.size() - 1, staticFragment);
+        } else {
+            addTransactionEntries(staticFragment.getEntries());
+        }
+        return this;
+    }
+
+    public RequestBuilder addTransactionEntry(final String entryKey, @Nullable final Object entryValue) {
+        // entryKey is something like ipAddress or collectionTransaction->billingFirstName or orderDetails->orderDetail[1]->shippingName
+        return addTransactionEntry(RequestPath.compile(entryKey), entryValue);
+    }
 
-        final Matcher matcher = SUBTREE_LIST_PATTERN.matcher(hierarchy[1]);
-        if (matcher.matches()) {
-            final String subTreeRootElement = hierarchy[0];
-            final Integer childNumber = Integer.parseInt(matcher.group(2));
-            Preconditions.checkNotNull(subTreeRootElement, "Invalid hierarchy " + Arrays.toString(hierarchy) + " for value " + entryValue + " and tree " + tree);
-            Preconditions.checkNotNull(childNumber, "Invalid hierarchy " + Arrays.toString(hierarchy) + " for value " + entryValue + " and tree " + tree);
+    public RequestBuilder addTransactionEntry(final RequestPath entryPath, @Nullable final Object entryValue) {
+        if (mode == Mode.STREAMING) {
+            getOrCreateTransactionEntries().add(new RequestEntry(entryPath, entryValue));
+        } else {
+            putDataInSubTree(entryPath, entryValue, getOrCreateTransaction());
+        }
+        return this;
+    }
 
-            if (tree.get(subTreeRootElement) == null) {
-                tree.put(subTreeRootElement, new RequestDataCollection(subTreeRootElement));
+    public RequestBuilder addTransactionEntries(final Iterable<RequestEntry> transactionEntries) {
+        for (final RequestEntry entry : transactionEntries) {
+            if (mode == Mode.STREAMING) {
+                getOrCreateTransactionEntries().add(entry);
+            } else {
+                putDataInSubTree(entry.getPath(), entry.getValue(), getOrCreateTransaction());
             }
-            final List<Map<String, Object>> children = (RequestDataCollection) tree.get(subTreeRootElement);
-            // Populate the missing children if inserted out-of-order
-            if (childNumber >= children.size()) {
-                for (int i = 0; i <= childNumber; i++) {
-                    children.add(new LinkedHashMap<String, Object>());
+        }
+        return this;
+    }
+
+    private void putDataInSubTree(final RequestPath path, final Object entryValue, final Map<String, Object> transaction) {
+        Map<String, Object> tree = transaction;
+        final int leafLevel = path.getDepth() - 1;
+        for (int level = 0; level < leafLevel; level++) {
+            final String subTreeRootElement = path.getName(level);
+            if (path.isList(level)) {
+                if (tree.get(subTreeRootElement) == null) {
+                    tree.put(subTreeRootElement, new RequestDataCollection(subTreeRootElement));
+                }
+                final RequestDataCollection children = (RequestDataCollection) tree.get(subTreeRootElement);
+                // Indexes may arrive out-of-order: only the missing slots up to this one are allocated
+                tree = children.getOrCreate(path.getListIndex(level));
+            } else {
+                if (tree.get(subTreeRootElement) == null) {
+                    tree.put(subTreeRootElement, new LinkedHashMap<String, Object>());
                 }
-            }
 
-            subTree = children.get(childNumber);
-            subHierarchy = new String[hierarchy.length - 1];
-            System.arraycopy(hierarchy, 1, subHierarchy, 0, hierarchy.length - 1);
-            subHierarchy[0] = matcher.group(1);
-        } else {
-            final String subTreeRootElement = hierarchy[0];
-            if (tree.get(subTreeRootElement) == null) {
-                tree.put(subTreeRootElement, new LinkedHashMap<String, Object>());
+                tree = (Map<String, Object>) tree.get(subTreeRootElement);
             }
-
-            subTree = (Map<String, Object>) tree.get(subTreeRootElement);
-            subHierarchy = new String[hierarchy.length - 1];
-            System.arraycopy(hierarchy, 1, subHierarchy, 0, hierarchy.length - 1);
         }
 
-        putDataInSubTree(subHierarchy, entryValue, subTree);
+        tree.put(path.getName(leafLevel), entryValue);
     }
 
     private Map<String, Object> getOrCreateTransaction() {
-        // Support a single transaction for now
         if (this.transactions.getTransactions().isEmpty()) {
-            this.transactions.getTransactions().add(new Transaction());
+            addTransaction();
         }
-        return this.transactions.getTransactions().get(0);
+        return this.transactions.getTransactions().get(this.transactions.getTransactions().size() - 1);
+    }
+
+    private List<RequestEntry> getOrCreateTransactionEntries() {
+        if (this.entries.isEmpty()) {
+            addTransaction();
+        }
+        return this.entries.get(this.entries.size() - 1);
+    }
+
+    private List<List<RequestEntry>> getEntriesWithStaticFragments() {
+        final List<List<RequestEntry>> allEntries = new ArrayList<List<RequestEntry>>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final StaticRequestFragment staticFragment = staticFragments.get(i);
+            if (staticFragment == null) {
+                allEntries.add(entries.get(i));
+            } else {
+                // Static entries first, so that the transaction ones win for identical paths
+                final List<RequestEntry> transactionEntries = staticFragment.getEntries(entries.get(i));
+                transactionEntries.addAll(entries.get(i));
+                allEntries.add(transactionEntries);
+            }
+        }
+        return allEntries;
     }
 
     public String build() throws AccertifyClientException {
+        if (mode == Mode.STREAMING) {
+            final StringWriter out = new StringWriter();
+            try {
+                StreamingRequestWriter.write(getEntriesWithStaticFragments(), ordering, out);
+            } catch (final XMLStreamException e) {
+                throw new AccertifyClientException("Invalid XML", e);
+            }
+            return out.toString();
+        }
+
         try {
-            return mapper.writeValueAsString(transactions);
+            return writer.writeValueAsString(transactions);
         } catch (final JsonProcessingException e) {
             throw new AccertifyClientException("Invalid XML", e);
         }
     }
+
+    /**
+     * Build the UTF-8 encoded request body. The document is written into a reusable per-thread buffer (only kept
+     * for typical request sizes), and copied once into the returned array, which can be handed as-is to the HTTP client.
+     *
+     * @return the request body
+     * @throws AccertifyClientException if the XML cannot be generated
+     */
+    public byte[] buildAsBytes() throws AccertifyClientException {
+        final ByteArrayOutputStream buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            if (mode == Mode.STREAMING) {
+                StreamingRequestWriter.write(getEntriesWithStaticFragments(), ordering, buffer);
+            } else {
+                writer.writeValue(buffer, transactions);
+            }
+            return buffer.toByteArray();
+        } catch (final XMLStreamException e) {
+            throw new AccertifyClientException("Invalid XML", e);
+        } catch (final IOException e) {
+            throw new AccertifyClientException("Invalid XML", e);
+        } finally {
+            if (buffer.size() > MAX_POOLED_BUFFER_SIZE) {
+                BUFFERS.remove();
+            }
+        }
+    }
 }
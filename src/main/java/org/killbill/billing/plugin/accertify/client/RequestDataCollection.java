@@ -17,14 +17,24 @@
 
 package org.killbill.billing.plugin.accertify.client;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-public class RequestDataCollection extends LinkedList<Map<String, Object>> {
+/**
+ * Children of a list element (e.g. orderDetails->orderDetail[i]), addressed by index.
+ * <p/>
+ * Indexes can be populated in any order: the collection only grows up to the highest index seen,
+ * missing children are null (and skipped at serialization time).
+ */
+public class RequestDataCollection extends AbstractList<Map<String, Object>> implements RandomAccess {
 
     private final String childElementName;
+    private final ArrayList<Map<String, Object>> children = new ArrayList<Map<String, Object>>();
 
     public RequestDataCollection(final String childElementName) {
         this.childElementName = childElementName;
@@ -34,4 +44,53 @@ public class RequestDataCollection extends LinkedList<Map<String, Object>> {
     public String getChildElementName() {
         return childElementName;
     }
+
+    /**
+     * Get the child at the specified index, creating it (and the holes before it) if needed
+     *
+     * @param index child index
+     * @return the child
+     */
+    public Map<String, Object> getOrCreate(final int index) {
+        if (index >= children.size()) {
+            children.ensureCapacity(index + 1);
+            while (children.size() <= index) {
+                children.add(null);
+            }
+        }
+
+        Map<String, Object> child = children.get(index);
+        if (child == null) {
+            child = new LinkedHashMap<String, Object>();
+            children.set(index, child);
+        }
+        return child;
+    }
+
+    @Override
+    public Map<String, Object> get(final int index) {
+        return children.get(index);
+    }
+
+    @Override
+    public Map<String, Object> set(final int index, final Map<String, Object> element) {
+        return children.set(index, element);
+    }
+
+    @Override
+    public void add(final int index, final Map<String, Object> element) {
+        children.add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public Map<String, Object> remove(final int index) {
+        modCount++;
+        return children.remove(index);
+    }
+
+    @Override
+    public int size() {
+        return children.size();
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import javax.annotation.Nullable;
+
+// A single value to write in the request, addressed by its compiled path
+public class RequestEntry {
+
+    private final RequestPath path;
+    private final Object value;
+
+    // Used for the insertion ordering only, see StreamingRequestWriter
+    private int[] ranks;
+
+    public RequestEntry(final RequestPath path, @Nullable final Object value) {
+        this.path = path;
+        this.value = value;
+    }
+
+    public RequestPath getPath() {
+        return path;
+    }
+
+    @Nullable
+    public Object getValue() {
+        return value;
+    }
+
+    int[] getRanks() {
+        return ranks;
+    }
+
+    void setRanks(final int[] ranks) {
+        this.ranks = ranks;
+    }
+}
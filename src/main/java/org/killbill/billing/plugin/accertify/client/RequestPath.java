@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compiled form of a request entry key, such as ipAddress, collectionTransaction->billingFirstName
+ * or orderDetails->orderDetail[1]->shippingName.
+ * <p/>
+ * Each segment is an element name. When followed by a list element (e.g. orderDetail[1]), the segment
+ * is a list container: its list index is set and the next segment is the (unbracketed) child element name.
+ */
+public final class RequestPath {
+
+    public static final int NO_LIST_INDEX = -1;
+
+    private static final String HIERARCHY_SEPARATOR = "->";
+    private static final Pattern SUBTREE_LIST_PATTERN = Pattern.compile("(.*)\\[([0-9]+)\\]");
+
+    private final String entryKey;
+    private final String[] names;
+    private final int[] listIndexes;
+
+    private RequestPath(final String entryKey, final String[] names, final int[] listIndexes) {
+        this.entryKey = entryKey;
+        this.names = names;
+        this.listIndexes = listIndexes;
+    }
+
+    public static RequestPath compile(final String entryKey) {
+        final String[] hierarchy = entryKey.split(HIERARCHY_SEPARATOR);
+        Preconditions.checkState(hierarchy.length >= 1, "Invalid hierarchy " + Arrays.toString(hierarchy) + " for key " + entryKey);
+
+        final String[] names = new String[hierarchy.length];
+        final int[] listIndexes = new int[hierarchy.length];
+        names[0] = hierarchy[0];
+        for (int i = 0; i < hierarchy.length; i++) {
+            listIndexes[i] = NO_LIST_INDEX;
+            if (i == hierarchy.length - 1) {
+                break;
+            }
+
+            final Matcher matcher = SUBTREE_LIST_PATTERN.matcher(hierarchy[i + 1]);
+            if (matcher.matches()) {
+                listIndexes[i] = Integer.parseInt(matcher.group(2));
+                names[i + 1] = matcher.group(1);
+            } else {
+                names[i + 1] = hierarchy[i + 1];
+            }
+        }
+
+        return new RequestPath(entryKey, names, listIndexes);
+    }
+
+    public String getEntryKey() {
+        return entryKey;
+    }
+
+    public int getDepth() {
+        return names.length;
+    }
+
+    public String getName(final int level) {
+        return names[level];
+    }
+
+    public boolean isList(final int level) {
+        return listIndexes[level] != NO_LIST_INDEX;
+    }
+
+    public int getListIndex(final int level) {
+        return listIndexes[level];
+    }
+
+    // Element name of the list children, only meaningful if isList(level)
+    public String getChildElementName(final int level) {
+        return names[level + 1];
+    }
+
+    @Override
+    public String toString() {
+        return entryKey;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final RequestPath that = (RequestPath) o;
+        return entryKey.equals(that.entryKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return entryKey.hashCode();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Bounded cache of compiled request paths, keyed by raw plugin property key (e.g. accertify_orderDetails->orderDetail[3]->shippingName).
+ * <p/>
+ * Property key sets are nearly identical from one payment to the next, so after warm-up no regex work is done on the request path.
+ */
+public class RequestPathCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 2000;
+
+    private final LoadingCache<String, Optional<RequestPath>> paths;
+
+    public RequestPathCache(final String keyPrefix) {
+        this(keyPrefix, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public RequestPathCache(final String keyPrefix, final long maximumSize) {
+        this.paths = CacheBuilder.newBuilder()
+                                 .maximumSize(maximumSize)
+                                 .build(new CacheLoader<String, Optional<RequestPath>>() {
+                                     @Override
+                                     public Optional<RequestPath> load(final String key) {
+                                         if (!key.startsWith(keyPrefix) || key.length() == keyPrefix.length()) {
+                                             return Optional.<RequestPath>absent();
+                                         }
+                                         return Optional.<RequestPath>of(RequestPath.compile(key.substring(keyPrefix.length())));
+                                     }
+                                 });
+    }
+
+    /**
+     * @param key raw property key
+     * @return the compiled path, or null if the key doesn't start with the prefix
+     */
+    @Nullable
+    public RequestPath get(final String key) {
+        return paths.getUnchecked(key).orNull();
+    }
+
+    public long size() {
+        return paths.size();
+    }
+}
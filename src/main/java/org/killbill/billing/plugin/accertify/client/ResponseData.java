@@ -17,6 +17,11 @@
 
 package org.killbill.billing.plugin.accertify.client;
 
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
@@ -26,7 +31,32 @@ public class ResponseData {
     @JacksonXmlProperty(localName = "transaction")
     private ResponseTransaction transaction;
 
+    // Raw responseData element, as returned by Accertify (see ResponseParser)
+    @JsonIgnore
+    private String rawXml;
+
+    public ResponseData() {}
+
+    ResponseData(final String rawXml) {
+        this.rawXml = rawXml;
+    }
+
+    // Parsed on first access only: most callers just store the raw XML
     public ResponseTransaction getTransaction() {
+        if (transaction == null && rawXml != null) {
+            try {
+                final ResponseData parsed = XmlMapperProvider.getResponseDataReader().readValue(rawXml);
+                transaction = parsed.transaction;
+            } catch (final IOException e) {
+                throw new IllegalStateException("Invalid responseData: " + rawXml, e);
+            }
+        }
         return transaction;
     }
+
+    // Null if not parsed by ResponseParser
+    @Nullable
+    public String getRawXml() {
+        return rawXml;
+    }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.google.common.base.Charsets;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+/**
+ * Parses Accertify responses in a single pass: the root element is read first,
+ * then either the expected document is bound from the same reader, or the error message is extracted.
+ * <p/>
+ * Transaction results are bound directly from the StAX events. Their responseData element isn't parsed:
+ * the raw XML is kept as-is (see ResponseData).
+ */
+final class ResponseParser {
+
+    private static final String TRANSACTION_RESULTS_ELEMENT = "transaction-results";
+    private static final String RESPONSE_DATA_ELEMENT = "responseData";
+
+    private static final Pattern CONTENT_TYPE_CHARSET = Pattern.compile(";\\s*charset\\s*=\\s*\"?([^\\s;\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PROLOG_ENCODING = Pattern.compile("^<\\?xml[^>]*\\sencoding\\s*=\\s*[\"']([^\"']+)[\"']");
+    // The prolog is short: don't look any further
+    private static final int MAX_PROLOG_LENGTH = 128;
+
+    // Thread-safe once configured
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private ResponseParser() {}
+
+    /**
+     * Decodes the body with the charset of the Content-Type header if any, or the one of the byte order mark
+     * or the XML prolog otherwise (UTF-8 by default, as per the XML specification). The body is parsed as characters,
+     * so that the raw responseData can be sliced by character offsets.
+     *
+     * @param body        response body
+     * @param contentType Content-Type header
+     * @return the decoded body, without byte order mark
+     */
+    static String decode(final byte[] body, @Nullable final String contentType) {
+        // UTF-8 byte order mark
+        if (body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB && (body[2] & 0xFF) == 0xBF) {
+            return new String(body, 3, body.length - 3, getCharset(getContentTypeCharset(contentType), Charsets.UTF_8));
+        }
+        // UTF-16 byte order marks, consumed by the UTF-16 decoder
+        if (body.length >= 2 && (((body[0] & 0xFF) == 0xFE && (body[1] & 0xFF) == 0xFF) || ((body[0] & 0xFF) == 0xFF && (body[1] & 0xFF) == 0xFE))) {
+            return new String(body, getCharset(getContentTypeCharset(contentType), Charsets.UTF_16));
+        }
+        return new String(body, getCharset(getContentTypeCharset(contentType), getCharset(getPrologEncoding(body), Charsets.UTF_8)));
+    }
+
+    static TransactionResults parseTransactionResults(final String body) throws IOException {
+        final XMLStreamReader xmlReader = createReader(body);
+        try {
+            checkRootElement(xmlReader, TRANSACTION_RESULTS_ELEMENT);
+            return readTransactionResults(xmlReader, body);
+        } catch (final XMLStreamException e) {
+            throw new IOException("Invalid Accertify response", e);
+        } finally {
+            close(xmlReader);
+        }
+    }
+
+    /**
+     * The wire format of the multi-transactions responses isn't documented: the transaction-results elements are
+     * accepted under any root element (or as the root element, for a single transaction). A response without any
+     * transaction-results element is an error response.
+     */
+    static TransactionResultsList parseTransactionResultsList(final String body) throws IOException {
+        final XMLStreamReader xmlReader = createReader(body);
+        try {
+            xmlReader.nextTag();
+            final List<TransactionResults> transactionResults = new ArrayList<TransactionResults>();
+            if (TRANSACTION_RESULTS_ELEMENT.equals(xmlReader.getLocalName())) {
+                transactionResults.add(readTransactionResults(xmlReader, body));
+                return new TransactionResultsList(transactionResults);
+            }
+
+            // E.g. <ERROR>The request could not be processed</ERROR>
+            final StringBuilder text = new StringBuilder();
+            int event = xmlReader.next();
+            while (event != XMLStreamReader.END_ELEMENT) {
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    if (TRANSACTION_RESULTS_ELEMENT.equals(xmlReader.getLocalName())) {
+                        transactionResults.add(readTransactionResults(xmlReader, body));
+                    } else {
+                        skipElement(xmlReader);
+                    }
+                } else if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA) {
+                    text.append(xmlReader.getText());
+                }
+                event = xmlReader.next();
+            }
+
+            if (transactionResults.isEmpty()) {
+                throw new IOException("Accertify returned an error: " + text.toString().trim());
+            }
+            return new TransactionResultsList(transactionResults);
+        } catch (final XMLStreamException e) {
+            throw new IOException("Invalid Accertify response", e);
+        } finally {
+            close(xmlReader);
+        }
+    }
+
+    /**
+     * @param body   response body
+     * @param clazz  expected response type, annotated with JacksonXmlRootElement
+     * @param reader reader for the expected response type
+     * @return the response
+     * @throws IOException if the body is invalid, or is an error response
+     */
+    static <T> T parse(final InputStream body, final Class<T> clazz, final ObjectReader reader) throws IOException {
+        final XMLStreamReader xmlReader;
+        try {
+            xmlReader = INPUT_FACTORY.createXMLStreamReader(body);
+        } catch (final XMLStreamException e) {
+            throw new IOException("Invalid Accertify response", e);
+        }
+
+        try {
+            final JacksonXmlRootElement expectedRootElement = clazz.getAnnotation(JacksonXmlRootElement.class);
+            checkRootElement(xmlReader, expectedRootElement == null ? null : expectedRootElement.localName());
+            final XmlFactory xmlFactory = (XmlFactory) XmlMapperProvider.getShared().getFactory();
+            return reader.readValue(xmlFactory.createParser(xmlReader));
+        } catch (final XMLStreamException e) {
+            throw new IOException("Invalid Accertify response", e);
+        } finally {
+            close(xmlReader);
+        }
+    }
+
+    // Positions the reader on the root element
+    private static void checkRootElement(final XMLStreamReader xmlReader, @Nullable final String expectedRootElement) throws XMLStreamException, IOException {
+        xmlReader.nextTag();
+        if (expectedRootElement == null || !expectedRootElement.equals(xmlReader.getLocalName())) {
+            // E.g. <ERROR>The request could not be processed</ERROR>
+            throw new IOException("Accertify returned an error: " + xmlReader.getElementText());
+        }
+    }
+
+    // The reader is positioned on the transaction-results start element, and is left on its end element
+    private static TransactionResults readTransactionResults(final XMLStreamReader xmlReader, final String body) throws XMLStreamException {
+        String transactionId = null;
+        String crossReference = null;
+        String rulesTripped = null;
+        String totalScore = null;
+        String recommendationCode = null;
+        String remarks = null;
+        ResponseData responseData = null;
+
+        int event = xmlReader.nextTag();
+        while (event == XMLStreamReader.START_ELEMENT) {
+            final String name = xmlReader.getLocalName();
+            if (RESPONSE_DATA_ELEMENT.equals(name)) {
+                final int start = xmlReader.getLocation().getCharacterOffset();
+                skipElement(xmlReader);
+                // The element ends where the next event starts
+                event = xmlReader.next();
+                final int end = xmlReader.getLocation().getCharacterOffset();
+                responseData = new ResponseData(body.substring(start, end));
+                if (event != XMLStreamReader.START_ELEMENT && event != XMLStreamReader.END_ELEMENT) {
+                    event = xmlReader.nextTag();
+                }
+                continue;
+            }
+
+            if ("transaction-id".equals(name)) {
+                transactionId = xmlReader.getElementText();
+            } else if ("cross-reference".equals(name)) {
+                crossReference = xmlReader.getElementText();
+            } else if ("rules-tripped".equals(name)) {
+                rulesTripped = xmlReader.getElementText();
+            } else if ("total-score".equals(name)) {
+                totalScore = xmlReader.getElementText();
+            } else if ("recommendation-code".equals(name)) {
+                recommendationCode = xmlReader.getElementText();
+            } else if ("remarks".equals(name)) {
+                remarks = xmlReader.getElementText();
+            } else {
+                skipElement(xmlReader);
+            }
+            event = xmlReader.nextTag();
+        }
+
+        return new TransactionResults(transactionId, crossReference, rulesTripped, totalScore, recommendationCode, remarks, responseData);
+    }
+
+    // The reader is positioned on a start element, and is left on the matching end element
+    private static void skipElement(final XMLStreamReader xmlReader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = xmlReader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLStreamReader createReader(final String body) throws IOException {
+        try {
+            // Character based, so that locations are character offsets in the body
+            return INPUT_FACTORY.createXMLStreamReader(new StringReader(body));
+        } catch (final XMLStreamException e) {
+            throw new IOException("Invalid Accertify response", e);
+        }
+    }
+
+    @Nullable
+    private static String getContentTypeCharset(@Nullable final String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        final Matcher matcher = CONTENT_TYPE_CHARSET.matcher(contentType);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    // The prolog is ASCII in all the ASCII-compatible encodings
+    @Nullable
+    private static String getPrologEncoding(final byte[] body) {
+        final String prolog = new String(body, 0, Math.min(body.length, MAX_PROLOG_LENGTH), Charsets.US_ASCII);
+        final Matcher matcher = PROLOG_ENCODING.matcher(prolog);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static Charset getCharset(@Nullable final String charsetName, final Charset defaultCharset) {
+        if (charsetName == null) {
+            return defaultCharset;
+        }
+        try {
+            return Charset.forName(charsetName.trim());
+        } catch (final IllegalCharsetNameException e) {
+            return defaultCharset;
+        } catch (final UnsupportedCharsetException e) {
+            return defaultCharset;
+        }
+    }
+
+    private static void close(final XMLStreamReader xmlReader) {
+        try {
+            xmlReader.close();
+        } catch (final XMLStreamException ignored) {
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = new WstxInputFactory();
+        // Responses never need DTDs nor external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
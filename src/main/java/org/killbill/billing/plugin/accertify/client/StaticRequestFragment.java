@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Request fields which are the same on every request for a tenant (merchant identifiers, site code, etc.),
+ * declared in the plugin configuration instead of being passed as plugin properties on each payment.
+ * <p/>
+ * Fields are grouped by top element (e.g. all collectionTransaction->* fields) and each group is serialized once,
+ * when the configuration is loaded. The pre-encoded groups are then spliced as-is in each transaction,
+ * unless the transaction has its own fields under the same top element: the static fields of that group are merged
+ * with the transaction ones instead, the transaction fields taking precedence.
+ */
+public final class StaticRequestFragment {
+
+    private final Map<String, Group> groups;
+
+    private StaticRequestFragment(final Map<String, Group> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * @param fields   static fields, keyed by entry key (e.g. collectionTransaction->merchantId)
+     * @param ordering ordering used for the requests of the tenant
+     * @return the compiled fragment
+     * @throws AccertifyClientException if the XML cannot be generated
+     */
+    public static StaticRequestFragment compile(final Map<String, String> fields, final RequestOrdering ordering) throws AccertifyClientException {
+        // Sorted, for a deterministic output regardless of the configuration order
+        final Map<String, List<RequestEntry>> entriesByTopElement = new TreeMap<String, List<RequestEntry>>();
+        for (final Map.Entry<String, String> field : new TreeMap<String, String>(fields).entrySet()) {
+            final RequestPath path = RequestPath.compile(field.getKey());
+            List<RequestEntry> entries = entriesByTopElement.get(path.getName(0));
+            if (entries == null) {
+                entries = new ArrayList<RequestEntry>();
+                entriesByTopElement.put(path.getName(0), entries);
+            }
+            entries.add(new RequestEntry(path, field.getValue()));
+        }
+
+        final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+        for (final Map.Entry<String, List<RequestEntry>> entries : entriesByTopElement.entrySet()) {
+            final String xml;
+            try {
+                xml = StreamingRequestWriter.writeElement(entries.getValue(), ordering);
+            } catch (final XMLStreamException e) {
+                throw new AccertifyClientException("Invalid static fields for " + entries.getKey(), e);
+            }
+            groups.put(entries.getKey(), new Group(RequestPath.compile(entries.getKey()), entries.getValue(), new EncodedElement(xml)));
+        }
+
+        return new StaticRequestFragment(ImmutableMap.<String, Group>copyOf(groups));
+    }
+
+    public boolean isEmpty() {
+        return groups.isEmpty();
+    }
+
+    /**
+     * Entries to add, before the transaction entries, to a transaction.
+     * New entries are returned on each call, as entries cannot be shared between requests.
+     *
+     * @param transactionEntries the transaction entries
+     * @return the static entries
+     */
+    List<RequestEntry> getEntries(final Collection<RequestEntry> transactionEntries) {
+        final Set<String> transactionTopElements = new HashSet<String>();
+        for (final RequestEntry entry : transactionEntries) {
+            transactionTopElements.add(entry.getPath().getName(0));
+        }
+
+        final List<RequestEntry> entries = new ArrayList<RequestEntry>(groups.size());
+        for (final Group group : groups.values()) {
+            if (transactionTopElements.contains(group.topElementPath.getName(0))) {
+                for (final RequestEntry entry : group.entries) {
+                    entries.add(new RequestEntry(entry.getPath(), entry.getValue()));
+                }
+            } else {
+                entries.add(new RequestEntry(group.topElementPath, group.encodedElement));
+            }
+        }
+        return entries;
+    }
+
+    // For the tree mode, which doesn't support pre-encoded elements
+    List<RequestEntry> getEntries() {
+        final List<RequestEntry> entries = new ArrayList<RequestEntry>();
+        for (final Group group : groups.values()) {
+            for (final RequestEntry entry : group.entries) {
+                entries.add(new RequestEntry(entry.getPath(), entry.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    // Serialized top element, written as-is by StreamingRequestWriter
+    static final class EncodedElement {
+
+        private final String xml;
+
+        private EncodedElement(final String xml) {
+            this.xml = xml;
+        }
+
+        String getXml() {
+            return xml;
+        }
+
+        @Override
+        public String toString() {
+            return xml;
+        }
+    }
+
+    private static final class Group {
+
+        private final RequestPath topElementPath;
+        private final List<RequestEntry> entries;
+        private final EncodedElement encodedElement;
+
+        private Group(final RequestPath topElementPath, final List<RequestEntry> entries, final EncodedElement encodedElement) {
+            this.topElementPath = topElementPath;
+            this.entries = ImmutableList.<RequestEntry>copyOf(entries);
+            this.encodedElement = encodedElement;
+        }
+    }
+}
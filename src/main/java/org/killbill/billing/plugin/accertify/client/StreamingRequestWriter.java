@@ -0,0 +1,280 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.codehaus.stax2.XMLOutputFactory2;
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+/**
+ * Writes the transactions document directly with the Woodstox writer, without building
+ * the intermediate Transaction / Map / RequestDataCollection tree.
+ * <p/>
+ * Entries are sorted in path order, which groups siblings and produces the same document as the Jackson based
+ * serialization: list children are always in index order, other elements are either sorted by name
+ * ({@link RequestOrdering#SORTED}) or kept in order of first appearance ({@link RequestOrdering#INSERTION}).
+ */
+final class StreamingRequestWriter {
+
+    private static final String TRANSACTIONS_ELEMENT = "transactions";
+    private static final String TRANSACTION_ELEMENT = "transaction";
+    private static final String UTF_8 = "UTF-8";
+
+    // Thread-safe once configured
+    private static final XMLOutputFactory2 OUTPUT_FACTORY = createOutputFactory();
+
+    private static final Comparator<RequestEntry> SORTED_PATH_ORDER = new Comparator<RequestEntry>() {
+        @Override
+        public int compare(final RequestEntry o1, final RequestEntry o2) {
+            return comparePaths(o1.getPath(), o2.getPath());
+        }
+    };
+
+    private static final Comparator<RequestEntry> INSERTION_PATH_ORDER = new Comparator<RequestEntry>() {
+        @Override
+        public int compare(final RequestEntry o1, final RequestEntry o2) {
+            return compareRanks(o1, o2);
+        }
+    };
+
+    private StreamingRequestWriter() {}
+
+    static void write(final List<List<RequestEntry>> entries, final RequestOrdering ordering, final Writer out) throws XMLStreamException {
+        write(entries, ordering, OUTPUT_FACTORY.createXMLStreamWriter(out));
+    }
+
+    // Writes UTF-8 directly, without going through an intermediate String
+    static void write(final List<List<RequestEntry>> entries, final RequestOrdering ordering, final OutputStream out) throws XMLStreamException {
+        write(entries, ordering, OUTPUT_FACTORY.createXMLStreamWriter(out, UTF_8));
+    }
+
+    private static void write(final List<List<RequestEntry>> entries, final RequestOrdering ordering, final XMLStreamWriter xmlWriter) throws XMLStreamException {
+        try {
+            writeTransactions(entries, ordering, xmlWriter);
+            xmlWriter.flush();
+        } finally {
+            xmlWriter.close();
+        }
+    }
+
+    // Serialize the entries of a single top element (see StaticRequestFragment)
+    static String writeElement(final List<RequestEntry> entries, final RequestOrdering ordering) throws XMLStreamException {
+        final StringWriter out = new StringWriter();
+        final XMLStreamWriter xmlWriter = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        try {
+            // Copy, as the entries are sorted in place
+            writeTransaction(new ArrayList<RequestEntry>(entries), ordering, xmlWriter);
+            xmlWriter.flush();
+        } finally {
+            xmlWriter.close();
+        }
+        return out.toString();
+    }
+
+    private static void writeTransactions(final List<List<RequestEntry>> entries, final RequestOrdering ordering, final XMLStreamWriter xmlWriter) throws XMLStreamException {
+        xmlWriter.writeStartElement(TRANSACTIONS_ELEMENT);
+        for (final List<RequestEntry> transactionEntries : entries) {
+            xmlWriter.writeStartElement(TRANSACTION_ELEMENT);
+            writeTransaction(transactionEntries, ordering, xmlWriter);
+            xmlWriter.writeEndElement();
+        }
+        xmlWriter.writeEndElement();
+    }
+
+    private static void writeTransaction(final List<RequestEntry> entries, final RequestOrdering ordering, final XMLStreamWriter xmlWriter) throws XMLStreamException {
+        final Comparator<RequestEntry> pathOrder;
+        if (ordering == RequestOrdering.INSERTION) {
+            assignRanks(entries);
+            pathOrder = INSERTION_PATH_ORDER;
+        } else {
+            pathOrder = SORTED_PATH_ORDER;
+        }
+        // Stable sort: for duplicated paths, the last entry added wins (like Map#put in the tree mode)
+        Collections.sort(entries, pathOrder);
+
+        RequestPath previous = null;
+        // Number of container elements currently open (for the previous path)
+        int openDepth = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final RequestEntry entry = entries.get(i);
+            final RequestPath path = entry.getPath();
+            if (i + 1 < entries.size() && pathOrder.compare(entry, entries.get(i + 1)) == 0) {
+                continue;
+            }
+
+            final int sharedDepth = previous == null ? 0 : sharedContainerDepth(previous, path);
+            for (; openDepth > sharedDepth; openDepth--) {
+                xmlWriter.writeEndElement();
+            }
+
+            final int leafLevel = path.getDepth() - 1;
+            for (; openDepth < leafLevel; openDepth++) {
+                xmlWriter.writeStartElement(path.getName(openDepth));
+            }
+
+            final Object value = entry.getValue();
+            if (value instanceof StaticRequestFragment.EncodedElement) {
+                // Pre-encoded top element
+                ((XMLStreamWriter2) xmlWriter).writeRaw(((StaticRequestFragment.EncodedElement) value).getXml());
+            } else if (value == null) {
+                xmlWriter.writeEmptyElement(path.getName(leafLevel));
+            } else {
+                xmlWriter.writeStartElement(path.getName(leafLevel));
+                xmlWriter.writeCharacters(String.valueOf(value));
+                xmlWriter.writeEndElement();
+            }
+
+            previous = path;
+        }
+
+        for (; openDepth > 0; openDepth--) {
+            xmlWriter.writeEndElement();
+        }
+    }
+
+    // Number of leading container elements two sorted paths have in common
+    private static int sharedContainerDepth(final RequestPath previous, final RequestPath path) {
+        final int maxDepth = Math.min(previous.getDepth(), path.getDepth()) - 1;
+        int level = 0;
+        while (level < maxDepth &&
+               previous.getName(level).equals(path.getName(level)) &&
+               (level == 0 || previous.getListIndex(level - 1) == path.getListIndex(level - 1))) {
+            level++;
+        }
+        return level;
+    }
+
+    static int comparePaths(final RequestPath p1, final RequestPath p2) {
+        final int depth = Math.min(p1.getDepth(), p2.getDepth());
+        for (int level = 0; level < depth; level++) {
+            final int nameComparison = p1.getName(level).compareTo(p2.getName(level));
+            if (nameComparison != 0) {
+                return nameComparison;
+            }
+
+            final int indexComparison = compareInts(p1.getListIndex(level), p2.getListIndex(level));
+            if (indexComparison != 0) {
+                return indexComparison;
+            }
+        }
+        return compareInts(p1.getDepth(), p2.getDepth());
+    }
+
+    // Give each element, identified by its parent, list index and name, a rank in order of first appearance
+    private static void assignRanks(final List<RequestEntry> entries) {
+        final Map<ElementKey, Integer> elementRanks = new HashMap<ElementKey, Integer>();
+        for (final RequestEntry entry : entries) {
+            final RequestPath path = entry.getPath();
+            final int[] ranks = new int[path.getDepth()];
+            int parentRank = -1;
+            for (int level = 0; level < path.getDepth(); level++) {
+                final ElementKey elementKey = new ElementKey(parentRank,
+                                                             level == 0 ? RequestPath.NO_LIST_INDEX : path.getListIndex(level - 1),
+                                                             path.getName(level));
+                Integer rank = elementRanks.get(elementKey);
+                if (rank == null) {
+                    rank = elementRanks.size();
+                    elementRanks.put(elementKey, rank);
+                }
+                ranks[level] = rank;
+                parentRank = rank;
+            }
+            entry.setRanks(ranks);
+        }
+    }
+
+    private static int compareRanks(final RequestEntry e1, final RequestEntry e2) {
+        final RequestPath p1 = e1.getPath();
+        final RequestPath p2 = e2.getPath();
+        final int depth = Math.min(p1.getDepth(), p2.getDepth());
+        for (int level = 0; level < depth; level++) {
+            // List children are always in index order
+            if (level > 0) {
+                final int indexComparison = compareInts(p1.getListIndex(level - 1), p2.getListIndex(level - 1));
+                if (indexComparison != 0) {
+                    return indexComparison;
+                }
+            }
+
+            final int rankComparison = compareInts(e1.getRanks()[level], e2.getRanks()[level]);
+            if (rankComparison != 0) {
+                return rankComparison;
+            }
+        }
+        return compareInts(p1.getDepth(), p2.getDepth());
+    }
+
+    private static int compareInts(final int i1, final int i2) {
+        return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
+    }
+
+    private static XMLOutputFactory2 createOutputFactory() {
+        final XMLOutputFactory2 factory = new WstxOutputFactory();
+        // Same as the Jackson serialization (e.g. <transactions/>)
+        factory.setProperty(XMLOutputFactory2.P_AUTOMATIC_EMPTY_ELEMENTS, true);
+        return factory;
+    }
+
+    private static final class ElementKey {
+
+        private final int parentRank;
+        private final int listIndex;
+        private final String name;
+
+        private ElementKey(final int parentRank, final int listIndex, final String name) {
+            this.parentRank = parentRank;
+            this.listIndex = listIndex;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final ElementKey that = (ElementKey) o;
+            return parentRank == that.parentRank && listIndex == that.listIndex && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = parentRank;
+            result = 31 * result + listIndex;
+            result = 31 * result + name.hashCode();
+            return result;
+        }
+    }
+}
@@ -17,7 +17,7 @@
 
 package org.killbill.billing.plugin.accertify.client;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
-public class Transaction extends HashMap<String, Object> {
+public class Transaction extends LinkedHashMap<String, Object> {
 }
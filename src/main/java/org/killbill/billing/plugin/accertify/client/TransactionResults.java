@@ -17,6 +17,7 @@
 
 package org.killbill.billing.plugin.accertify.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
@@ -38,6 +39,33 @@ public class TransactionResults {
     @JacksonXmlProperty(localName = "responseData")
     private ResponseData responseData;
 
+    // Typed view of the above, see getDecision()
+    @JsonIgnore
+    private AccertifyDecision decision;
+    // Attempt which returned these results, see HedgedAssessment
+    @JsonIgnore
+    private int attempt = 1;
+
+    public TransactionResults() {}
+
+    // See ResponseParser
+    TransactionResults(final String transactionId,
+                       final String crossReference,
+                       final String rulesTripped,
+                       final String totalScore,
+                       final String recommendationCode,
+                       final String remarks,
+                       final ResponseData responseData) {
+        this.transactionId = transactionId;
+        this.crossReference = crossReference;
+        this.rulesTripped = rulesTripped;
+        this.totalScore = totalScore;
+        this.recommendationCode = recommendationCode;
+        this.remarks = remarks;
+        this.responseData = responseData;
+        this.decision = AccertifyDecision.of(recommendationCode, totalScore, rulesTripped);
+    }
+
     public String getTransactionId() {
         return transactionId;
     }
@@ -62,7 +90,23 @@ public class TransactionResults {
         return remarks;
     }
 
+    public AccertifyDecision getDecision() {
+        // Built by ResponseParser, or on first access when bound by Jackson
+        if (decision == null) {
+            decision = AccertifyDecision.of(recommendationCode, totalScore, rulesTripped);
+        }
+        return decision;
+    }
+
     public ResponseData getResponseData() {
         return responseData;
     }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    void setAttempt(final int attempt) {
+        this.attempt = attempt;
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+// Response to a request with multiple transactions: one transaction-results element per transaction, the root element isn't checked (see ResponseParser)
+@JacksonXmlRootElement(localName = "transactions-results")
+public class TransactionResultsList {
+
+    @JacksonXmlProperty(localName = "transaction-results")
+    @JacksonXmlElementWrapper(useWrapping = false)
+    private List<TransactionResults> transactionResults = new ArrayList<TransactionResults>();
+
+    public TransactionResultsList() {}
+
+    // See ResponseParser
+    TransactionResultsList(final List<TransactionResults> transactionResults) {
+        this.transactionResults = transactionResults;
+    }
+
+    public List<TransactionResults> getTransactionResults() {
+        return transactionResults;
+    }
+}
@@ -18,6 +18,7 @@
 package org.killbill.billing.plugin.accertify.client;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
@@ -25,25 +26,101 @@ import javax.xml.namespace.QName;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import com.google.common.collect.ImmutableMap;
 
 public abstract class XmlMapperProvider {
 
+    private static final String WARM_UP_TRANSACTION_RESULTS = "<transaction-results>" +
+                                                              "<transaction-id>0</transaction-id>" +
+                                                              "<total-score>0</total-score>" +
+                                                              "<recommendation-code>ACCEPT</recommendation-code>" +
+                                                              "<responseData><transaction><transaction-details><transaction-detail/></transaction-details></transaction></responseData>" +
+                                                              "</transaction-results>";
+    private static final String WARM_UP_ERROR_RESPONSE = "<ERROR>warm-up</ERROR>";
+
+    // Process-wide instances: XmlMapper, ObjectWriter and ObjectReader are thread-safe once configured,
+    // and sharing them lets Jackson keep its serializer and deserializer caches across requests.
+    // The shared mapper must never be reconfigured.
+    private static final XmlMapper SHARED_MAPPER = get();
+    private static final ObjectWriter TRANSACTIONS_WRITER = SHARED_MAPPER.writerFor(Transactions.class);
+    private static final ObjectWriter INSERTION_ORDER_TRANSACTIONS_WRITER = get(RequestOrdering.INSERTION).writerFor(Transactions.class);
+    private static final ObjectReader TRANSACTION_RESULTS_READER = SHARED_MAPPER.readerFor(TransactionResults.class);
+    private static final ObjectReader TRANSACTION_RESULTS_LIST_READER = SHARED_MAPPER.readerFor(TransactionResultsList.class);
+    private static final ObjectReader RESPONSE_DATA_READER = SHARED_MAPPER.readerFor(ResponseData.class);
+    private static final ObjectReader ERROR_RESPONSE_READER = SHARED_MAPPER.readerFor(ErrorResponse.class);
+
+    public static XmlMapper getShared() {
+        return SHARED_MAPPER;
+    }
+
+    public static ObjectWriter getTransactionsWriter() {
+        return TRANSACTIONS_WRITER;
+    }
+
+    public static ObjectWriter getTransactionsWriter(final RequestOrdering ordering) {
+        return ordering == RequestOrdering.INSERTION ? INSERTION_ORDER_TRANSACTIONS_WRITER : TRANSACTIONS_WRITER;
+    }
+
+    public static ObjectReader getTransactionResultsReader() {
+        return TRANSACTION_RESULTS_READER;
+    }
+
+    public static ObjectReader getTransactionResultsListReader() {
+        return TRANSACTION_RESULTS_LIST_READER;
+    }
+
+    public static ObjectReader getResponseDataReader() {
+        return RESPONSE_DATA_READER;
+    }
+
+    public static ObjectReader getErrorResponseReader() {
+        return ERROR_RESPONSE_READER;
+    }
+
+    // Exercise every shared writer and reader once, so that the first payment doesn't pay for
+    // the (de)serializer lookups and the Woodstox factories initialization
+    public static void warmUp() throws IOException {
+        final Transactions transactions = new Transactions();
+        final Transaction transaction = new Transaction();
+        transaction.put("ipAddress", "127.0.0.1");
+        final Map<String, Object> orderDetail = new LinkedHashMap<String, Object>();
+        orderDetail.put("orderDetail", ImmutableMap.<String, Object>of("shippingName", "John Doe"));
+        final RequestDataCollection orderDetails = new RequestDataCollection("orderDetails");
+        orderDetails.add(orderDetail);
+        transaction.put("orderDetails", orderDetails);
+        transactions.getTransactions().add(transaction);
+        TRANSACTIONS_WRITER.writeValueAsString(transactions);
+        INSERTION_ORDER_TRANSACTIONS_WRITER.writeValueAsString(transactions);
+
+        TRANSACTION_RESULTS_READER.readValue(WARM_UP_TRANSACTION_RESULTS);
+        ERROR_RESPONSE_READER.readValue(WARM_UP_ERROR_RESPONSE);
+    }
+
+    // Creates a new, private, mapper: prefer the shared instances above on the request path
     public static XmlMapper get() {
+        return get(RequestOrdering.SORTED);
+    }
+
+    public static XmlMapper get(final RequestOrdering ordering) {
         final XmlMapper mapper = new XmlMapper();
 
         final SimpleModule m = new SimpleModule("accertify", new Version(1, 0, 0, null, null, null));
         m.addSerializer(RequestDataCollection.class, new RequestDataCollectionSerializer(RequestDataCollection.class));
         mapper.registerModule(m);
 
-        // Mostly to help tests and debugging
-        mapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
-        mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        if (ordering == RequestOrdering.SORTED) {
+            // Mostly to help tests, debugging and audits: this sorts every map at serialization time
+            mapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+            mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        }
 
         return mapper;
     }
@@ -60,6 +137,10 @@ public abstract class XmlMapperProvider {
             ((ToXmlGenerator) jgen).setNextName(new QName(null, values.getChildElementName()));
             jgen.writeStartObject();
             for (final Map<String, Object> value : values) {
+                // Holes left by sparse indexes
+                if (value == null) {
+                    continue;
+                }
                 for (final String key : value.keySet()) {
                     jgen.writeObjectField(key, value.get(key));
                 }
@@ -24,7 +24,15 @@ import org.killbill.billing.control.plugin.api.PaymentControlPluginApi;
 import org.killbill.billing.osgi.api.OSGIPluginProperties;
 import org.killbill.billing.osgi.libs.killbill.KillbillActivatorBase;
 import org.killbill.billing.plugin.accertify.api.AccertifyPaymentControlPluginApi;
+import org.killbill.billing.plugin.accertify.api.AccountCache;
+import org.killbill.billing.plugin.accertify.api.DecisionCache;
+import org.killbill.billing.plugin.accertify.api.PaymentMethodPluginCache;
+import org.killbill.billing.plugin.accertify.api.PostAuthorizationReviews;
+import org.killbill.billing.plugin.accertify.api.ShadowAssessments;
 import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+import org.killbill.billing.plugin.accertify.client.ConcurrencyLimiterMBeans;
+import org.killbill.billing.plugin.accertify.client.HttpTransports;
+import org.killbill.billing.plugin.accertify.client.XmlMapperProvider;
 import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
 import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
 import org.killbill.clock.Clock;
@@ -32,7 +40,7 @@ import org.killbill.clock.DefaultClock;
 import org.osgi.framework.BundleContext;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class AccertifyActivator extends KillbillActivatorBase {
 
@@ -41,11 +49,17 @@ public class AccertifyActivator extends KillbillActivatorBase {
     public static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.accertify.";
 
     private AccertifyConfigurationHandler accertifyConfigurationHandler;
+    private AccountCache accountCache;
+    private ShadowAssessments shadowAssessments;
+    private PostAuthorizationReviews postAuthorizationReviews;
 
     @Override
     public void start(final BundleContext context) throws Exception {
         super.start(context);
 
+        // Build the shared XML (de)serializers upfront, instead of on the first payment
+        XmlMapperProvider.warmUp();
+
         accertifyConfigurationHandler = new AccertifyConfigurationHandler(PLUGIN_NAME, killbillAPI, logService);
 
         final AccertifyClient globalAccertifyClient = accertifyConfigurationHandler.createConfigurable(configProperties.getProperties());
@@ -54,15 +68,69 @@ public class AccertifyActivator extends KillbillActivatorBase {
         // Configurable globally only
         final String paymentPluginsString = configProperties.getString(PROPERTY_PREFIX + "plugins");
         final String[] paymentPlugins = Strings.isNullOrEmpty(paymentPluginsString) ? new String[]{} : paymentPluginsString.split(",");
-        final Collection<String> paymentPluginsSubjectToAutomaticRejection = ImmutableList.<String>copyOf(paymentPlugins);
+        final Collection<String> paymentPluginsSubjectToAutomaticRejection = ImmutableSet.<String>copyOf(paymentPlugins);
+
+        // Configurable globally only
+        final String accountCacheMaxSizeString = configProperties.getString(PROPERTY_PREFIX + "accountCacheMaxSize");
+        final String accountCacheTtlSecString = configProperties.getString(PROPERTY_PREFIX + "accountCacheTtlSec");
+        accountCache = new AccountCache(killbillAPI,
+                                        Strings.isNullOrEmpty(accountCacheMaxSizeString) ? AccountCache.DEFAULT_MAXIMUM_SIZE : Long.valueOf(accountCacheMaxSizeString),
+                                        Strings.isNullOrEmpty(accountCacheTtlSecString) ? AccountCache.DEFAULT_TTL_SEC : Long.valueOf(accountCacheTtlSecString));
+
+        // Configurable globally only
+        final String paymentMethodCacheMaxSizeString = configProperties.getString(PROPERTY_PREFIX + "paymentMethodCacheMaxSize");
+        final String paymentMethodCacheTtlSecString = configProperties.getString(PROPERTY_PREFIX + "paymentMethodCacheTtlSec");
+        final PaymentMethodPluginCache paymentMethodPluginCache = new PaymentMethodPluginCache(killbillAPI,
+                                                                                               Strings.isNullOrEmpty(paymentMethodCacheMaxSizeString) ? PaymentMethodPluginCache.DEFAULT_MAXIMUM_SIZE : Long.valueOf(paymentMethodCacheMaxSizeString),
+                                                                                               Strings.isNullOrEmpty(paymentMethodCacheTtlSecString) ? PaymentMethodPluginCache.DEFAULT_TTL_SEC : Long.valueOf(paymentMethodCacheTtlSecString));
 
         final AccertifyDao dao = new AccertifyDao(dataSource.getDataSource());
         final Clock clock = new DefaultClock();
 
+        // Configurable globally only
+        final String decisionCacheMaxSizeString = configProperties.getString(PROPERTY_PREFIX + "decisionCacheMaxSize");
+        final String decisionCacheTtlSecString = configProperties.getString(PROPERTY_PREFIX + "decisionCacheTtlSec");
+        final DecisionCache decisionCache = new DecisionCache(dao,
+                                                              clock,
+                                                              Strings.isNullOrEmpty(decisionCacheMaxSizeString) ? DecisionCache.DEFAULT_MAXIMUM_SIZE : Long.valueOf(decisionCacheMaxSizeString),
+                                                              Strings.isNullOrEmpty(decisionCacheTtlSecString) ? DecisionCache.DEFAULT_TTL_SEC : Long.valueOf(decisionCacheTtlSecString));
+
+        // Configurable globally only: shadow mode is opt-in
+        if (Boolean.valueOf(configProperties.getString(PROPERTY_PREFIX + "shadowMode"))) {
+            final String shadowThreadsString = configProperties.getString(PROPERTY_PREFIX + "shadowThreads");
+            final String shadowQueueSizeString = configProperties.getString(PROPERTY_PREFIX + "shadowQueueSize");
+            shadowAssessments = new ShadowAssessments(Strings.isNullOrEmpty(shadowThreadsString) ? ShadowAssessments.DEFAULT_NB_THREADS : Integer.valueOf(shadowThreadsString),
+                                                      Strings.isNullOrEmpty(shadowQueueSizeString) ? ShadowAssessments.DEFAULT_QUEUE_SIZE : Integer.valueOf(shadowQueueSizeString));
+        }
+
+        // Configurable globally only: post-authorization reviews are opt-in (then enabled per tenant, see reviewMode),
+        // as they need the accertify_reviews table
+        if (Boolean.valueOf(configProperties.getString(PROPERTY_PREFIX + "postAuthorizationReviews"))) {
+            final String reviewThreadsString = configProperties.getString(PROPERTY_PREFIX + "reviewThreads");
+            final String reviewMaxAttemptsString = configProperties.getString(PROPERTY_PREFIX + "reviewMaxAttempts");
+            final String reviewRetryIntervalSecString = configProperties.getString(PROPERTY_PREFIX + "reviewRetryIntervalSec");
+            postAuthorizationReviews = new PostAuthorizationReviews(dao,
+                                                                    accertifyConfigurationHandler,
+                                                                    paymentMethodPluginCache,
+                                                                    paymentPluginsSubjectToAutomaticRejection,
+                                                                    killbillAPI,
+                                                                    clock,
+                                                                    Strings.isNullOrEmpty(reviewThreadsString) ? PostAuthorizationReviews.DEFAULT_NB_THREADS : Integer.valueOf(reviewThreadsString),
+                                                                    Strings.isNullOrEmpty(reviewMaxAttemptsString) ? PostAuthorizationReviews.DEFAULT_MAX_ATTEMPTS : Integer.valueOf(reviewMaxAttemptsString),
+                                                                    Strings.isNullOrEmpty(reviewRetryIntervalSecString) ? PostAuthorizationReviews.DEFAULT_RETRY_INTERVAL_SEC : Long.valueOf(reviewRetryIntervalSecString));
+            // Resume the pending reviews
+            postAuthorizationReviews.start();
+        }
+
         // Register the PaymentControlPluginApi
         final PaymentControlPluginApi paymentControlPluginApi = new AccertifyPaymentControlPluginApi(paymentPluginsSubjectToAutomaticRejection,
                                                                                                      dao,
                                                                                                      accertifyConfigurationHandler,
+                                                                                                     accountCache,
+                                                                                                     decisionCache,
+                                                                                                     paymentMethodPluginCache,
+                                                                                                     shadowAssessments,
+                                                                                                     postAuthorizationReviews,
                                                                                                      killbillAPI,
                                                                                                      configProperties,
                                                                                                      logService,
@@ -72,10 +140,24 @@ public class AccertifyActivator extends KillbillActivatorBase {
         registerEventHandler();
     }
 
+    @Override
+    public void stop(final BundleContext context) throws Exception {
+        super.stop(context);
+        if (shadowAssessments != null) {
+            shadowAssessments.shutdown();
+        }
+        if (postAuthorizationReviews != null) {
+            postAuthorizationReviews.stop();
+        }
+        // Shared by all the tenant AccertifyClient instances
+        HttpTransports.closeAll();
+        ConcurrencyLimiterMBeans.unregisterAll();
+    }
+
     private void registerEventHandler() {
-        final PluginConfigurationEventHandler handler = new PluginConfigurationEventHandler(accertifyConfigurationHandler);
+        // Configuration changes and account cache invalidation
+        final AccertifyEventHandler handler = new AccertifyEventHandler(new PluginConfigurationEventHandler(accertifyConfigurationHandler), accountCache);
         dispatcher.registerEventHandlers(handler);
-
     }
 
     private void registerPaymentControlPluginApi(final BundleContext context, final PaymentControlPluginApi api) {
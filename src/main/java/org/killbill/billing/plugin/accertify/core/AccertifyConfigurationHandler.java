@@ -17,7 +17,6 @@
 
 package org.killbill.billing.plugin.accertify.core;
 
-import java.security.GeneralSecurityException;
 import java.util.Properties;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
@@ -35,10 +34,6 @@ public class AccertifyConfigurationHandler extends PluginTenantConfigurableConfi
 
     @Override
     protected AccertifyClient createConfigurable(final Properties properties) {
-        try {
-            return new AccertifyClient(properties);
-        } catch (final GeneralSecurityException e) {
-            throw new IllegalStateException(e);
-        }
+        return new AccertifyClient(properties);
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.core;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillEventDispatcher.OSGIKillbillEventHandler;
+import org.killbill.billing.plugin.accertify.api.AccountCache;
+import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
+
+public class AccertifyEventHandler implements OSGIKillbillEventHandler {
+
+    private final PluginConfigurationEventHandler configurationEventHandler;
+    private final AccountCache accountCache;
+
+    public AccertifyEventHandler(final PluginConfigurationEventHandler configurationEventHandler, final AccountCache accountCache) {
+        this.configurationEventHandler = configurationEventHandler;
+        this.accountCache = accountCache;
+    }
+
+    @Override
+    public void handleKillbillEvent(final ExtBusEvent killbillEvent) {
+        if (killbillEvent.getEventType() == ExtBusEventType.ACCOUNT_CHANGE && killbillEvent.getAccountId() != null) {
+            accountCache.invalidate(killbillEvent.getAccountId());
+        }
+
+        configurationEventHandler.handleKillbillEvent(killbillEvent);
+    }
+}
@@ -27,14 +27,20 @@ import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.jooq.Condition;
 import org.jooq.impl.DSL;
+import org.jooq.types.UInteger;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.CircuitBreaker;
+import org.killbill.billing.plugin.accertify.client.ResponseData;
 import org.killbill.billing.plugin.accertify.client.TransactionResults;
 import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord;
 import org.killbill.billing.plugin.dao.PluginDao;
 
 import static org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES;
+import static org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS;
 
 public class AccertifyDao extends PluginDao {
 
@@ -49,6 +55,7 @@ public class AccertifyDao extends PluginDao {
                             final BigDecimal amount,
                             final Currency currency,
                             @Nullable final TransactionResults transactionResults,
+                            @Nullable final CircuitBreaker.State circuitState,
                             final DateTime utcNow,
                             final UUID kbTenantId) throws SQLException {
         execute(dataSource.getConnection(),
@@ -70,6 +77,8 @@ public class AccertifyDao extends PluginDao {
                                        ACCERTIFY_RESPONSES.RECOMMENDATION_CODE,
                                        ACCERTIFY_RESPONSES.REMARKS,
                                        ACCERTIFY_RESPONSES.ADDITIONAL_DATA,
+                                       ACCERTIFY_RESPONSES.ATTEMPT,
+                                       ACCERTIFY_RESPONSES.CIRCUIT_STATE,
                                        ACCERTIFY_RESPONSES.CREATED_DATE,
                                        ACCERTIFY_RESPONSES.KB_TENANT_ID)
                            .values(kbAccountId.toString(),
@@ -84,7 +93,9 @@ public class AccertifyDao extends PluginDao {
                                    transactionResults == null ? null : transactionResults.getTotalScore(),
                                    transactionResults == null ? null : transactionResults.getRecommendationCode(),
                                    transactionResults == null ? null : transactionResults.getRemarks(),
-                                   transactionResults == null || transactionResults.getResponseData() == null ? null : asString(transactionResults.getResponseData().getTransaction()),
+                                   getAdditionalData(transactionResults),
+                                   transactionResults == null ? null : transactionResults.getAttempt(),
+                                   circuitState == null ? null : circuitState.name(),
                                    toTimestamp(utcNow),
                                    kbTenantId.toString())
                            .execute();
@@ -93,6 +104,17 @@ public class AccertifyDao extends PluginDao {
                 });
     }
 
+    @Nullable
+    private String getAdditionalData(@Nullable final TransactionResults transactionResults) throws SQLException {
+        if (transactionResults == null || transactionResults.getResponseData() == null) {
+            return null;
+        }
+
+        final ResponseData responseData = transactionResults.getResponseData();
+        // Stored as returned by Accertify, without parsing it
+        return responseData.getRawXml() != null ? responseData.getRawXml() : asString(responseData.getTransaction());
+    }
+
     public List<AccertifyResponsesRecord> getResponses(final String kbPaymentExternalKey, final UUID kbTenantId) throws SQLException {
         return execute(dataSource.getConnection(),
                        new WithConnectionCallback<List<AccertifyResponsesRecord>>() {
@@ -107,4 +129,168 @@ public class AccertifyDao extends PluginDao {
                            }
                        });
     }
+
+    // Latest assessment (i.e. with an Accertify recommendation) of that payment transaction since createdAfter, null if none
+    @Nullable
+    public AccertifyResponsesRecord getLatestAssessedResponse(final String kbPaymentExternalKey,
+                                                              final String kbPaymentTransactionExternalKey,
+                                                              final TransactionType transactionType,
+                                                              final DateTime createdAfter,
+                                                              final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<AccertifyResponsesRecord>() {
+                           @Override
+                           public AccertifyResponsesRecord withConnection(final Connection conn) throws SQLException {
+                               // Uses the kb_payment_transaction_external_key index
+                               return DSL.using(conn, dialect, settings)
+                                         .selectFrom(ACCERTIFY_RESPONSES)
+                                         .where(ACCERTIFY_RESPONSES.KB_PAYMENT_TRANSACTION_EXTERNAL_KEY.equal(kbPaymentTransactionExternalKey))
+                                         .and(ACCERTIFY_RESPONSES.KB_PAYMENT_EXTERNAL_KEY.equal(kbPaymentExternalKey))
+                                         .and(ACCERTIFY_RESPONSES.TRANSACTION_TYPE.equal(transactionType.name()))
+                                         .and(ACCERTIFY_RESPONSES.RECOMMENDATION_CODE.isNotNull())
+                                         .and(ACCERTIFY_RESPONSES.CREATED_DATE.greaterOrEqual(toTimestamp(createdAfter)))
+                                         .and(ACCERTIFY_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                         .orderBy(ACCERTIFY_RESPONSES.RECORD_ID.desc())
+                                         .limit(1)
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    // Returns the record id
+    public UInteger addReview(final UUID kbAccountId,
+                              final UUID kbPaymentMethodId,
+                              final UUID kbPaymentId,
+                              final String kbPaymentExternalKey,
+                              final UUID kbPaymentTransactionId,
+                              final String kbPaymentTransactionExternalKey,
+                              final TransactionType transactionType,
+                              final BigDecimal amount,
+                              final Currency currency,
+                              final String requestPayload,
+                              final DateTime utcNow,
+                              final UUID kbTenantId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<UInteger>() {
+                           @Override
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .insertInto(ACCERTIFY_REVIEWS,
+                                                     ACCERTIFY_REVIEWS.KB_ACCOUNT_ID,
+                                                     ACCERTIFY_REVIEWS.KB_PAYMENT_METHOD_ID,
+                                                     ACCERTIFY_REVIEWS.KB_PAYMENT_ID,
+                                                     ACCERTIFY_REVIEWS.KB_PAYMENT_EXTERNAL_KEY,
+                                                     ACCERTIFY_REVIEWS.KB_PAYMENT_TRANSACTION_ID,
+                                                     ACCERTIFY_REVIEWS.KB_PAYMENT_TRANSACTION_EXTERNAL_KEY,
+                                                     ACCERTIFY_REVIEWS.TRANSACTION_TYPE,
+                                                     ACCERTIFY_REVIEWS.AMOUNT,
+                                                     ACCERTIFY_REVIEWS.CURRENCY,
+                                                     ACCERTIFY_REVIEWS.REQUEST_PAYLOAD,
+                                                     ACCERTIFY_REVIEWS.STATE,
+                                                     ACCERTIFY_REVIEWS.ATTEMPTS,
+                                                     ACCERTIFY_REVIEWS.CREATED_DATE,
+                                                     ACCERTIFY_REVIEWS.UPDATED_DATE,
+                                                     ACCERTIFY_REVIEWS.KB_TENANT_ID)
+                                         .values(kbAccountId.toString(),
+                                                 kbPaymentMethodId.toString(),
+                                                 kbPaymentId.toString(),
+                                                 kbPaymentExternalKey,
+                                                 kbPaymentTransactionId.toString(),
+                                                 kbPaymentTransactionExternalKey,
+                                                 transactionType.name(),
+                                                 amount,
+                                                 currency.name(),
+                                                 requestPayload,
+                                                 ReviewState.PENDING.name(),
+                                                 0,
+                                                 toTimestamp(utcNow),
+                                                 toTimestamp(utcNow),
+                                                 kbTenantId.toString())
+                                         .returning(ACCERTIFY_REVIEWS.RECORD_ID)
+                                         .fetchOne()
+                                         .getRecordId();
+                           }
+                       });
+    }
+
+    @Nullable
+    public AccertifyReviewsRecord getReview(final UInteger recordId) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<AccertifyReviewsRecord>() {
+                           @Override
+                           public AccertifyReviewsRecord withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .selectFrom(ACCERTIFY_REVIEWS)
+                                         .where(ACCERTIFY_REVIEWS.RECORD_ID.equal(recordId))
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    // Ids of the pending reviews, and of the ones whose claim was last renewed before claimExpiredBefore (all tenants)
+    public List<UInteger> getReviewsToProcess(final DateTime claimExpiredBefore, final int limit) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<List<UInteger>>() {
+                           @Override
+                           public List<UInteger> withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .select(ACCERTIFY_REVIEWS.RECORD_ID)
+                                         .from(ACCERTIFY_REVIEWS)
+                                         .where(isClaimable(claimExpiredBefore))
+                                         .orderBy(ACCERTIFY_REVIEWS.RECORD_ID.asc())
+                                         .limit(limit)
+                                         .fetch(ACCERTIFY_REVIEWS.RECORD_ID);
+                           }
+                       });
+    }
+
+    // False if the review was processed or claimed concurrently (e.g. by another node)
+    public boolean claimReview(final UInteger recordId, final DateTime claimExpiredBefore, final DateTime utcNow) throws SQLException {
+        return execute(dataSource.getConnection(),
+                       new WithConnectionCallback<Boolean>() {
+                           @Override
+                           public Boolean withConnection(final Connection conn) throws SQLException {
+                               return DSL.using(conn, dialect, settings)
+                                         .update(ACCERTIFY_REVIEWS)
+                                         .set(ACCERTIFY_REVIEWS.STATE, ReviewState.IN_PROGRESS.name())
+                                         .set(ACCERTIFY_REVIEWS.UPDATED_DATE, toTimestamp(utcNow))
+                                         .where(ACCERTIFY_REVIEWS.RECORD_ID.equal(recordId))
+                                         .and(isClaimable(claimExpiredBefore))
+                                         .execute() == 1;
+                           }
+                       });
+    }
+
+    public void updateReview(final UInteger recordId,
+                             final ReviewState state,
+                             final int attempts,
+                             @Nullable final String lastError,
+                             final DateTime utcNow) throws SQLException {
+        execute(dataSource.getConnection(),
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        DSL.using(conn, dialect, settings)
+                           .update(ACCERTIFY_REVIEWS)
+                           .set(ACCERTIFY_REVIEWS.STATE, state.name())
+                           .set(ACCERTIFY_REVIEWS.ATTEMPTS, attempts)
+                           .set(ACCERTIFY_REVIEWS.LAST_ERROR, truncate(lastError, 1024))
+                           .set(ACCERTIFY_REVIEWS.UPDATED_DATE, toTimestamp(utcNow))
+                           .where(ACCERTIFY_REVIEWS.RECORD_ID.equal(recordId))
+                           .execute();
+                        return null;
+                    }
+                });
+    }
+
+    private Condition isClaimable(final DateTime claimExpiredBefore) {
+        return ACCERTIFY_REVIEWS.STATE.equal(ReviewState.PENDING.name())
+                                      .or(ACCERTIFY_REVIEWS.STATE.equal(ReviewState.IN_PROGRESS.name())
+                                                                 .and(ACCERTIFY_REVIEWS.UPDATED_DATE.lessThan(toTimestamp(claimExpiredBefore))));
+    }
+
+    @Nullable
+    private static String truncate(@Nullable final String value, final int maxLength) {
+        return value == null || value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
 }
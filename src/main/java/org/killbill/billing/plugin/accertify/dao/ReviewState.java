@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.dao;
+
+// State of a post-authorization review (see accertify_reviews)
+public enum ReviewState {
+    // Waiting for the assessment, or for a retry
+    PENDING,
+    // Being processed (the claim expires if the node dies)
+    IN_PROGRESS,
+    // Not rejected by Accertify, or payment plugin not subject to automatic rejection
+    ACCEPTED,
+    VOIDED,
+    REFUNDED,
+    // Gave up after too many attempts
+    FAILED
+}
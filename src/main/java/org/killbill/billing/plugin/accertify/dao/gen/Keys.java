@@ -22,12 +22,14 @@ public class Keys {
 	// -------------------------------------------------------------------------
 
 	public static final org.jooq.Identity<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord, org.jooq.types.UInteger> IDENTITY_ACCERTIFY_RESPONSES = Identities0.IDENTITY_ACCERTIFY_RESPONSES;
+	public static final org.jooq.Identity<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord, org.jooq.types.UInteger> IDENTITY_ACCERTIFY_REVIEWS = Identities0.IDENTITY_ACCERTIFY_REVIEWS;
 
 	// -------------------------------------------------------------------------
 	// UNIQUE and PRIMARY KEY definitions
 	// -------------------------------------------------------------------------
 
 	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord> KEY_ACCERTIFY_RESPONSES_PRIMARY = UniqueKeys0.KEY_ACCERTIFY_RESPONSES_PRIMARY;
+	public static final org.jooq.UniqueKey<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord> KEY_ACCERTIFY_REVIEWS_PRIMARY = UniqueKeys0.KEY_ACCERTIFY_REVIEWS_PRIMARY;
 
 	// -------------------------------------------------------------------------
 	// FOREIGN KEY definitions
@@ -40,9 +42,11 @@ public class Keys {
 
 	private static class Identities0 extends org.jooq.impl.AbstractKeys {
 		public static org.jooq.Identity<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord, org.jooq.types.UInteger> IDENTITY_ACCERTIFY_RESPONSES = createIdentity(org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES, org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.RECORD_ID);
+		public static org.jooq.Identity<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord, org.jooq.types.UInteger> IDENTITY_ACCERTIFY_REVIEWS = createIdentity(org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS, org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS.RECORD_ID);
 	}
 
 	private static class UniqueKeys0 extends org.jooq.impl.AbstractKeys {
 		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord> KEY_ACCERTIFY_RESPONSES_PRIMARY = createUniqueKey(org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES, org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.RECORD_ID);
+		public static final org.jooq.UniqueKey<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord> KEY_ACCERTIFY_REVIEWS_PRIMARY = createUniqueKey(org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS, org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS.RECORD_ID);
 	}
 }
@@ -39,6 +39,7 @@ public class Killbill extends org.jooq.impl.SchemaImpl {
 
 	private final java.util.List<org.jooq.Table<?>> getTables0() {
 		return java.util.Arrays.<org.jooq.Table<?>>asList(
-			org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES);
+			org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES,
+			org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS);
 	}
 }
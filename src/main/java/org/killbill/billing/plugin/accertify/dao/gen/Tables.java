@@ -20,4 +20,9 @@ public class Tables {
 	 * The table killbill.accertify_responses
 	 */
 	public static final org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses ACCERTIFY_RESPONSES = org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES;
+
+	/**
+	 * The table killbill.accertify_reviews
+	 */
+	public static final org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews ACCERTIFY_REVIEWS = org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyReviews.ACCERTIFY_REVIEWS;
 }
@@ -101,6 +101,16 @@ public class AccertifyResponses extends org.jooq.impl.TableImpl<org.killbill.bil
 	 */
 	public final org.jooq.TableField<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "");
 
+	/**
+	 * The column <code>killbill.accertify_responses.attempt</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord, java.lang.Integer> ATTEMPT = createField("attempt", org.jooq.impl.SQLDataType.INTEGER, this, "");
+
+	/**
+	 * The column <code>killbill.accertify_responses.circuit_state</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord, java.lang.String> CIRCUIT_STATE = createField("circuit_state", org.jooq.impl.SQLDataType.VARCHAR.length(16), this, "");
+
 	/**
 	 * The column <code>killbill.accertify_responses.created_date</code>.
 	 */
@@ -14,7 +14,7 @@ package org.killbill.billing.plugin.accertify.dao.gen.tables.records;
 	comments = "This class is generated by jOOQ"
 )
 @java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
-public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord> implements org.jooq.Record16<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> {
+public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord> implements org.jooq.Record18<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.Integer, java.lang.String, java.sql.Timestamp, java.lang.String> {
 
 	private static final long serialVersionUID = 1209784655;
 
@@ -214,32 +214,60 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 		return (java.lang.String) getValue(13);
 	}
 
+	/**
+	 * Setter for <code>killbill.accertify_responses.attempt</code>.
+	 */
+	public void setAttempt(java.lang.Integer value) {
+		setValue(14, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.accertify_responses.attempt</code>.
+	 */
+	public java.lang.Integer getAttempt() {
+		return (java.lang.Integer) getValue(14);
+	}
+
+	/**
+	 * Setter for <code>killbill.accertify_responses.circuit_state</code>.
+	 */
+	public void setCircuitState(java.lang.String value) {
+		setValue(15, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.accertify_responses.circuit_state</code>.
+	 */
+	public java.lang.String getCircuitState() {
+		return (java.lang.String) getValue(15);
+	}
+
 	/**
 	 * Setter for <code>killbill.accertify_responses.created_date</code>.
 	 */
 	public void setCreatedDate(java.sql.Timestamp value) {
-		setValue(14, value);
+		setValue(16, value);
 	}
 
 	/**
 	 * Getter for <code>killbill.accertify_responses.created_date</code>.
 	 */
 	public java.sql.Timestamp getCreatedDate() {
-		return (java.sql.Timestamp) getValue(14);
+		return (java.sql.Timestamp) getValue(16);
 	}
 
 	/**
 	 * Setter for <code>killbill.accertify_responses.kb_tenant_id</code>.
 	 */
 	public void setKbTenantId(java.lang.String value) {
-		setValue(15, value);
+		setValue(17, value);
 	}
 
 	/**
 	 * Getter for <code>killbill.accertify_responses.kb_tenant_id</code>.
 	 */
 	public java.lang.String getKbTenantId() {
-		return (java.lang.String) getValue(15);
+		return (java.lang.String) getValue(17);
 	}
 
 	// -------------------------------------------------------------------------
@@ -255,23 +283,23 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	}
 
 	// -------------------------------------------------------------------------
-	// Record16 type implementation
+	// Record18 type implementation
 	// -------------------------------------------------------------------------
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public org.jooq.Row16<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> fieldsRow() {
-		return (org.jooq.Row16) super.fieldsRow();
+	public org.jooq.Row18<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.Integer, java.lang.String, java.sql.Timestamp, java.lang.String> fieldsRow() {
+		return (org.jooq.Row18) super.fieldsRow();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public org.jooq.Row16<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> valuesRow() {
-		return (org.jooq.Row16) super.valuesRow();
+	public org.jooq.Row18<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.math.BigDecimal, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.Integer, java.lang.String, java.sql.Timestamp, java.lang.String> valuesRow() {
+		return (org.jooq.Row18) super.valuesRow();
 	}
 
 	/**
@@ -390,8 +418,8 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 * {@inheritDoc}
 	 */
 	@Override
-	public org.jooq.Field<java.sql.Timestamp> field15() {
-		return org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.CREATED_DATE;
+	public org.jooq.Field<java.lang.Integer> field15() {
+		return org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.ATTEMPT;
 	}
 
 	/**
@@ -399,6 +427,22 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 */
 	@Override
 	public org.jooq.Field<java.lang.String> field16() {
+		return org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.CIRCUIT_STATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.sql.Timestamp> field17() {
+		return org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.CREATED_DATE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field18() {
 		return org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES.KB_TENANT_ID;
 	}
 
@@ -518,8 +562,8 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 * {@inheritDoc}
 	 */
 	@Override
-	public java.sql.Timestamp value15() {
-		return getCreatedDate();
+	public java.lang.Integer value15() {
+		return getAttempt();
 	}
 
 	/**
@@ -527,6 +571,22 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 */
 	@Override
 	public java.lang.String value16() {
+		return getCircuitState();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.sql.Timestamp value17() {
+		return getCreatedDate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value18() {
 		return getKbTenantId();
 	}
 
@@ -660,8 +720,8 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 * {@inheritDoc}
 	 */
 	@Override
-	public AccertifyResponsesRecord value15(java.sql.Timestamp value) {
-		setCreatedDate(value);
+	public AccertifyResponsesRecord value15(java.lang.Integer value) {
+		setAttempt(value);
 		return this;
 	}
 
@@ -670,6 +730,24 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 */
 	@Override
 	public AccertifyResponsesRecord value16(java.lang.String value) {
+		setCircuitState(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AccertifyResponsesRecord value17(java.sql.Timestamp value) {
+		setCreatedDate(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AccertifyResponsesRecord value18(java.lang.String value) {
 		setKbTenantId(value);
 		return this;
 	}
@@ -678,7 +756,7 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	 * {@inheritDoc}
 	 */
 	@Override
-	public AccertifyResponsesRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.String value3, java.lang.String value4, java.lang.String value5, java.math.BigDecimal value6, java.lang.String value7, java.lang.String value8, java.lang.String value9, java.lang.String value10, java.lang.String value11, java.lang.String value12, java.lang.String value13, java.lang.String value14, java.sql.Timestamp value15, java.lang.String value16) {
+	public AccertifyResponsesRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.String value3, java.lang.String value4, java.lang.String value5, java.math.BigDecimal value6, java.lang.String value7, java.lang.String value8, java.lang.String value9, java.lang.String value10, java.lang.String value11, java.lang.String value12, java.lang.String value13, java.lang.String value14, java.lang.Integer value15, java.lang.String value16, java.sql.Timestamp value17, java.lang.String value18) {
 		return this;
 	}
 
@@ -696,7 +774,7 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 	/**
 	 * Create a detached, initialised AccertifyResponsesRecord
 	 */
-	public AccertifyResponsesRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentExternalKey, java.lang.String kbPaymentTransactionExternalKey, java.lang.String transactionType, java.math.BigDecimal amount, java.lang.String currency, java.lang.String transactionId, java.lang.String crossReference, java.lang.String rulesTripped, java.lang.String totalScore, java.lang.String recommendationCode, java.lang.String remarks, java.lang.String additionalData, java.sql.Timestamp createdDate, java.lang.String kbTenantId) {
+	public AccertifyResponsesRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentExternalKey, java.lang.String kbPaymentTransactionExternalKey, java.lang.String transactionType, java.math.BigDecimal amount, java.lang.String currency, java.lang.String transactionId, java.lang.String crossReference, java.lang.String rulesTripped, java.lang.String totalScore, java.lang.String recommendationCode, java.lang.String remarks, java.lang.String additionalData, java.lang.Integer attempt, java.lang.String circuitState, java.sql.Timestamp createdDate, java.lang.String kbTenantId) {
 		super(org.killbill.billing.plugin.accertify.dao.gen.tables.AccertifyResponses.ACCERTIFY_RESPONSES);
 
 		setValue(0, recordId);
@@ -713,7 +791,9 @@ public class AccertifyResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<
 		setValue(11, recommendationCode);
 		setValue(12, remarks);
 		setValue(13, additionalData);
-		setValue(14, createdDate);
-		setValue(15, kbTenantId);
+		setValue(14, attempt);
+		setValue(15, circuitState);
+		setValue(16, createdDate);
+		setValue(17, kbTenantId);
 	}
 }
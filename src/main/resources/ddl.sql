@@ -16,6 +16,8 @@ create table accertify_responses (
 , recommendation_code varchar(64)
 , remarks varchar(1024)
 , additional_data longtext
+, attempt int
+, circuit_state varchar(16)
 , created_date datetime not null
 , kb_tenant_id char(36) not null
 , primary key(record_id)
@@ -23,3 +25,27 @@ create table accertify_responses (
 create index accertify_responses_transaction_id on accertify_responses(transaction_id);
 create index accertify_responses_kb_payment_external_key on accertify_responses(kb_payment_external_key);
 create index accertify_responses_kb_payment_transaction_external_key on accertify_responses(kb_payment_transaction_external_key);
+
+drop table if exists accertify_reviews;
+create table accertify_reviews (
+  record_id int(11) unsigned not null auto_increment
+, kb_account_id char(36) not null
+, kb_payment_method_id char(36) not null
+, kb_payment_id char(36) not null
+, kb_payment_external_key char(128) not null
+, kb_payment_transaction_id char(36) not null
+, kb_payment_transaction_external_key char(128) not null
+, transaction_type varchar(32) not null
+, amount numeric(15,9)
+, currency char(3)
+, request_payload longtext not null
+, state varchar(32) not null
+, attempts int not null
+, last_error varchar(1024)
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index accertify_reviews_state on accertify_reviews(state);
+create index accertify_reviews_kb_payment_id on accertify_reviews(kb_payment_id);
@@ -19,13 +19,14 @@ package org.killbill.billing.plugin.accertify.api;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.security.GeneralSecurityException;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.control.plugin.api.PaymentControlContext;
@@ -41,10 +42,18 @@ import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.plugin.TestUtils;
 import org.killbill.billing.plugin.TestWithEmbeddedDBBase;
 import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+import org.killbill.billing.plugin.accertify.client.AccertifyClientException;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.client.AccountFieldMapping;
+import org.killbill.billing.plugin.accertify.client.AssessmentPolicy;
+import org.killbill.billing.plugin.accertify.client.FailureMode;
+import org.killbill.billing.plugin.accertify.client.RequestOrdering;
+import org.killbill.billing.plugin.accertify.client.TransactionResults;
 import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
 import org.killbill.billing.plugin.accertify.core.AccertifyConfigurationHandler;
 import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
 import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.mockito.Mockito;
@@ -53,6 +62,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 // To run these tests, you need two properties files in the classpath (e.g. src/test/resources/accertify.properties):
 // * accertify.properties with your Accertify credentials
@@ -62,6 +72,7 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
 
     private static final String ACCERTIFY_PROPERTIES = "accertify.properties";
     private static final String PAYLOAD_RESOURCE = "payload.properties";
+    private static final String PAYMENT_PLUGIN_NAME = "killbill-ACME";
 
     private Collection<String> paymentPluginsSubjectToAutomaticRejection;
     private AccertifyDao dao;
@@ -75,8 +86,6 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
 
     @BeforeMethod(groups = "slow")
     public void setUp() throws Exception {
-        final String paymentPluginName = "killbill-ACME";
-
         final Account account = TestUtils.buildAccount(Currency.USD, "US");
         final UUID accountId = account.getId();
 
@@ -84,9 +93,9 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
 
         final Payment payment = TestUtils.buildPayment(accountId, account.getPaymentMethodId(), account.getCurrency(), killbillApi);
         final PaymentTransaction paymentTransaction = TestUtils.buildPaymentTransaction(payment, TransactionType.AUTHORIZE, payment.getCurrency());
-        final PaymentMethod paymentMethod = TestUtils.buildPaymentMethod(accountId, account.getPaymentMethodId(), paymentPluginName, killbillApi);
+        final PaymentMethod paymentMethod = TestUtils.buildPaymentMethod(accountId, account.getPaymentMethodId(), PAYMENT_PLUGIN_NAME, killbillApi);
 
-        paymentPluginsSubjectToAutomaticRejection = ImmutableList.<String>of(paymentPluginName);
+        paymentPluginsSubjectToAutomaticRejection = ImmutableList.<String>of(PAYMENT_PLUGIN_NAME);
         dao = new AccertifyDao(embeddedDB.getDataSource());
         configProperties = Mockito.mock(OSGIConfigPropertiesService.class);
         logService = TestUtils.buildLogService();
@@ -104,6 +113,11 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
         final AccertifyPaymentControlPluginApi pluginApi = new AccertifyPaymentControlPluginApi(paymentPluginsSubjectToAutomaticRejection,
                                                                                                 dao,
                                                                                                 client,
+                                                                                                new AccountCache(killbillApi),
+                                                                                                new DecisionCache(dao, clock),
+                                                                                                new PaymentMethodPluginCache(killbillApi),
+                                                                                                null,
+                                                                                                null,
                                                                                                 killbillApi,
                                                                                                 configProperties,
                                                                                                 logService,
@@ -113,7 +127,7 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
 
         final List<AccertifyResponsesRecord> responses = dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId());
         Assert.assertEquals(responses.size(), 1);
-        Assert.assertEquals(AccertifyPaymentControlPluginApi.ACCERTIFY_REJECT.equals(responses.get(0).getRecommendationCode()), routingResult.isAborted());
+        Assert.assertEquals(AccertifyDecision.of(responses.get(0).getRecommendationCode(), null, null).isReject(), routingResult.isAborted());
     }
 
     @Test(groups = "slow")
@@ -121,6 +135,11 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
         final AccertifyPaymentControlPluginApi pluginApi = new AccertifyPaymentControlPluginApi(ImmutableList.<String>of(),
                                                                                                 dao,
                                                                                                 client,
+                                                                                                new AccountCache(killbillApi),
+                                                                                                new DecisionCache(dao, clock),
+                                                                                                new PaymentMethodPluginCache(killbillApi),
+                                                                                                null,
+                                                                                                null,
                                                                                                 killbillApi,
                                                                                                 configProperties,
                                                                                                 logService,
@@ -133,6 +152,176 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
         Assert.assertFalse(routingResult.isAborted());
     }
 
+    @Test(groups = "slow")
+    public void testIntegrationWithRetries() throws Exception {
+        final DecisionCache decisionCache = new DecisionCache(dao, clock);
+        final AccertifyPaymentControlPluginApi pluginApi = new AccertifyPaymentControlPluginApi(paymentPluginsSubjectToAutomaticRejection,
+                                                                                                dao,
+                                                                                                client,
+                                                                                                new AccountCache(killbillApi),
+                                                                                                decisionCache,
+                                                                                                new PaymentMethodPluginCache(killbillApi),
+                                                                                                null,
+                                                                                                null,
+                                                                                                killbillApi,
+                                                                                                configProperties,
+                                                                                                logService,
+                                                                                                clock);
+
+        final PriorPaymentControlResult routingResult = pluginApi.priorCall(routingContext, pluginProperties);
+        Assert.assertEquals(pluginApi.priorCall(routingContext, pluginProperties).isAborted(), routingResult.isAborted());
+        Assert.assertEquals(decisionCache.size(), 1);
+
+        // Restart: the stored decision is used
+        final AccertifyPaymentControlPluginApi restartedPluginApi = new AccertifyPaymentControlPluginApi(paymentPluginsSubjectToAutomaticRejection,
+                                                                                                         dao,
+                                                                                                         client,
+                                                                                                         new AccountCache(killbillApi),
+                                                                                                         new DecisionCache(dao, clock),
+                                                                                                         new PaymentMethodPluginCache(killbillApi),
+                                                                                                         null,
+                                                                                                         null,
+                                                                                                         killbillApi,
+                                                                                                         configProperties,
+                                                                                                         logService,
+                                                                                                         clock);
+        Assert.assertEquals(restartedPluginApi.priorCall(routingContext, pluginProperties).isAborted(), routingResult.isAborted());
+
+        // Accertify called once
+        final List<AccertifyResponsesRecord> responses = dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId());
+        Assert.assertEquals(responses.size(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testShadowedPlugin() throws Exception {
+        final AccertifyClient accertifyClient = mockAccertifyClient(AssessmentPolicy.Action.ASSESS_AND_ENFORCE, "REJECT");
+        final ShadowAssessments shadowAssessments = mockShadowAssessments(true);
+        final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache("killbill-OTHER"), shadowAssessments, null);
+
+        // Not subject to automatic rejection: assessed in the background
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+        Mockito.verify(shadowAssessments).submit(Mockito.<Runnable>any());
+        Mockito.verify(accertifyClient, Mockito.never()).assess(Mockito.<byte[]>any());
+    }
+
+    @Test(groups = "slow")
+    public void testShadowQueueFull() throws Exception {
+        final AccertifyClient accertifyClient = mockAccertifyClient(AssessmentPolicy.Action.ASSESS_ONLY, "REJECT");
+        final ShadowAssessments shadowAssessments = mockShadowAssessments(false);
+        final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache(PAYMENT_PLUGIN_NAME), shadowAssessments, null);
+
+        // Dropped: the payment doesn't wait for Accertify
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+        Mockito.verify(shadowAssessments).submit(Mockito.<Runnable>any());
+        Mockito.verify(accertifyClient, Mockito.never()).assess(Mockito.<byte[]>any());
+        Assert.assertEquals(dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId()).size(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testShadowModeWithUnknownPlugin() throws Exception {
+        final AccertifyClient accertifyClient = mockAccertifyClient(AssessmentPolicy.Action.ASSESS_AND_ENFORCE, "ACCEPT");
+        final ShadowAssessments shadowAssessments = mockShadowAssessments(true);
+        final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache(null), shadowAssessments, null);
+
+        // Regular path
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+        Mockito.verify(shadowAssessments, Mockito.never()).submit(Mockito.<Runnable>any());
+        Mockito.verify(accertifyClient).assess(Mockito.<byte[]>any());
+        Assert.assertEquals(dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId()).size(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testSkippedByPolicy() throws Exception {
+        final AccertifyClient accertifyClient = mockAccertifyClient(AssessmentPolicy.Action.SKIP, "REJECT");
+        final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache(PAYMENT_PLUGIN_NAME), null, null);
+
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+        Mockito.verify(accertifyClient, Mockito.never()).assess(Mockito.<byte[]>any());
+        Assert.assertEquals(dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId()).size(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testAssessOnlyNeverAborts() throws Exception {
+        final AccertifyClient accertifyClient = mockAccertifyClient(AssessmentPolicy.Action.ASSESS_ONLY, "REJECT");
+        final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache(PAYMENT_PLUGIN_NAME), null, null);
+
+        // Rejected: only recorded
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+        Assert.assertEquals(dao.getResponses(routingContext.getPaymentExternalKey(), routingContext.getTenantId()).size(), 1);
+
+        // Accertify unavailable, with FAIL_CLOSED
+        Mockito.when(accertifyClient.getFailureMode()).thenReturn(FailureMode.FAIL_CLOSED);
+        Mockito.when(accertifyClient.assess(Mockito.<byte[]>any())).thenThrow(new AccertifyClientException("Accertify returned HTTP status 503"));
+        Mockito.when(routingContext.getPaymentExternalKey()).thenReturn(UUID.randomUUID().toString());
+        Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+    }
+
+    @Test(groups = "slow")
+    public void testOnlyEnforcedPaymentsAreReviewed() throws Exception {
+        for (final AssessmentPolicy.Action action : AssessmentPolicy.Action.values()) {
+            final AccertifyClient accertifyClient = mockAccertifyClient(action, "REJECT");
+            Mockito.when(accertifyClient.isReviewMode()).thenReturn(true);
+            final PostAuthorizationReviews postAuthorizationReviews = Mockito.mock(PostAuthorizationReviews.class);
+            final AccertifyPaymentControlPluginApi pluginApi = buildPluginApi(accertifyClient, mockPaymentMethodPluginCache(PAYMENT_PLUGIN_NAME), null, postAuthorizationReviews);
+
+            Assert.assertFalse(pluginApi.priorCall(routingContext, pluginProperties).isAborted());
+            pluginApi.onSuccessCall(routingContext, pluginProperties);
+
+            if (action == AssessmentPolicy.Action.ASSESS_AND_ENFORCE) {
+                Mockito.verify(postAuthorizationReviews).add(Mockito.eq(routingContext), Mockito.<byte[]>any());
+            } else {
+                Mockito.verify(postAuthorizationReviews, Mockito.never()).add(Mockito.<PaymentControlContext>any(), Mockito.<byte[]>any());
+            }
+        }
+    }
+
+    private AccertifyPaymentControlPluginApi buildPluginApi(final AccertifyClient accertifyClient,
+                                                            final PaymentMethodPluginCache paymentMethodPluginCache,
+                                                            @Nullable final ShadowAssessments shadowAssessments,
+                                                            @Nullable final PostAuthorizationReviews postAuthorizationReviews) {
+        final AccertifyConfigurationHandler accertifyConfigurationHandler = Mockito.mock(AccertifyConfigurationHandler.class);
+        Mockito.when(accertifyConfigurationHandler.getConfigurable(Mockito.<UUID>any())).thenReturn(accertifyClient);
+        return new AccertifyPaymentControlPluginApi(paymentPluginsSubjectToAutomaticRejection,
+                                                    dao,
+                                                    accertifyConfigurationHandler,
+                                                    new AccountCache(killbillApi),
+                                                    new DecisionCache(dao, clock),
+                                                    paymentMethodPluginCache,
+                                                    shadowAssessments,
+                                                    postAuthorizationReviews,
+                                                    killbillApi,
+                                                    configProperties,
+                                                    logService,
+                                                    clock);
+    }
+
+    private AccertifyClient mockAccertifyClient(final AssessmentPolicy.Action action, final String recommendationCode) throws Exception {
+        final TransactionResults transactionResults = Mockito.mock(TransactionResults.class);
+        Mockito.when(transactionResults.getRecommendationCode()).thenReturn(recommendationCode);
+        Mockito.when(transactionResults.getDecision()).thenReturn(AccertifyDecision.of(recommendationCode, null, null));
+
+        final AccertifyClient accertifyClient = Mockito.mock(AccertifyClient.class);
+        Mockito.when(accertifyClient.getAssessmentPolicy()).thenReturn(AssessmentPolicy.compile(ImmutableMap.<String, String>of("default", action.name())));
+        Mockito.when(accertifyClient.getRequestOrdering()).thenReturn(RequestOrdering.SORTED);
+        Mockito.when(accertifyClient.getAccountFieldMapping()).thenReturn(AccountFieldMapping.EMPTY);
+        Mockito.when(accertifyClient.getFailureMode()).thenReturn(FailureMode.FAIL_OPEN);
+        Mockito.when(accertifyClient.getLatencyBudgetMs()).thenReturn(AccertifyClient.NO_LATENCY_BUDGET);
+        Mockito.when(accertifyClient.assess(Mockito.<byte[]>any())).thenReturn(transactionResults);
+        return accertifyClient;
+    }
+
+    private PaymentMethodPluginCache mockPaymentMethodPluginCache(@Nullable final String pluginName) {
+        final PaymentMethodPluginCache paymentMethodPluginCache = Mockito.mock(PaymentMethodPluginCache.class);
+        Mockito.when(paymentMethodPluginCache.getPluginName(Mockito.<UUID>any(), Mockito.<TenantContext>any())).thenReturn(pluginName);
+        return paymentMethodPluginCache;
+    }
+
+    private ShadowAssessments mockShadowAssessments(final boolean accepting) {
+        final ShadowAssessments shadowAssessments = Mockito.mock(ShadowAssessments.class);
+        Mockito.when(shadowAssessments.submit(Mockito.<Runnable>any())).thenReturn(accepting);
+        return shadowAssessments;
+    }
+
     private void buildPluginProperties() throws IOException {
         this.pluginProperties = new LinkedList<PluginProperty>();
         final String payload = TestUtils.toString(PAYLOAD_RESOURCE);
@@ -142,7 +331,7 @@ public class TestAccertifyPaymentControlPluginApi extends TestWithEmbeddedDBBase
         }
     }
 
-    private void buildAccertifyClient() throws IOException, GeneralSecurityException {
+    private void buildAccertifyClient() throws IOException {
         client = new AccertifyConfigurationHandler(AccertifyActivator.PLUGIN_NAME, killbillApi, logService);
         final Properties properties = TestUtils.loadProperties(ACCERTIFY_PROPERTIES);
         final AccertifyClient globalAccertifyClient = new AccertifyClient(properties);
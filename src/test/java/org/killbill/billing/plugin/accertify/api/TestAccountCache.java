@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAccountCache {
+
+    @Test(groups = "fast")
+    public void testCacheAndInvalidation() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final Account account = Mockito.mock(Account.class);
+        final TenantContext context = Mockito.mock(TenantContext.class);
+
+        final AccountUserApi accountUserApi = Mockito.mock(AccountUserApi.class);
+        Mockito.when(accountUserApi.getAccountById(accountId, context)).thenReturn(account);
+        final OSGIKillbillAPI killbillApi = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillApi.getAccountUserApi()).thenReturn(accountUserApi);
+
+        final AccountCache accountCache = new AccountCache(killbillApi);
+        Assert.assertSame(accountCache.getAccount(accountId, context), account);
+        Assert.assertSame(accountCache.getAccount(accountId, context), account);
+        Mockito.verify(accountUserApi, Mockito.times(1)).getAccountById(accountId, context);
+
+        accountCache.invalidate(accountId);
+        Assert.assertSame(accountCache.getAccount(accountId, context), account);
+        Mockito.verify(accountUserApi, Mockito.times(2)).getAccountById(accountId, context);
+    }
+
+    @Test(groups = "fast")
+    public void testUnknownAccount() throws Exception {
+        final AccountUserApi accountUserApi = Mockito.mock(AccountUserApi.class);
+        final OSGIKillbillAPI killbillApi = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillApi.getAccountUserApi()).thenReturn(accountUserApi);
+
+        final AccountCache accountCache = new AccountCache(killbillApi);
+        Assert.assertNull(accountCache.getAccount(UUID.randomUUID(), Mockito.mock(TenantContext.class)));
+        Assert.assertEquals(accountCache.size(), 0);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestDecisionCache {
+
+    private static final AccertifyDecision ACCEPT = AccertifyDecision.of("ACCEPT", "10", null);
+    private static final LatencyBudget UNBOUNDED = LatencyBudget.unbounded();
+
+    @Test(groups = "fast")
+    public void testSingleFlight() throws Exception {
+        final DecisionCache decisionCache = new DecisionCache(Mockito.mock(AccertifyDao.class), new DefaultClock());
+        final UUID kbTenantId = UUID.randomUUID();
+
+        final AtomicInteger nbAssessments = new AtomicInteger();
+        final CountDownLatch assessing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<AccertifyDecision> assessment = new Callable<AccertifyDecision>() {
+            @Override
+            public AccertifyDecision call() throws Exception {
+                nbAssessments.incrementAndGet();
+                assessing.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return ACCEPT;
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Callable<AccertifyDecision> get = new Callable<AccertifyDecision>() {
+                @Override
+                public AccertifyDecision call() throws Exception {
+                    return decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment);
+                }
+            };
+            final Future<AccertifyDecision> first = executor.submit(get);
+            Assert.assertTrue(assessing.await(10, TimeUnit.SECONDS));
+            final Future<AccertifyDecision> second = executor.submit(get);
+            // Give the second request a chance to start
+            Thread.sleep(100);
+            release.countDown();
+
+            Assert.assertEquals(first.get(10, TimeUnit.SECONDS), ACCEPT);
+            Assert.assertEquals(second.get(10, TimeUnit.SECONDS), ACCEPT);
+            Assert.assertEquals(nbAssessments.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Retry
+        Assert.assertEquals(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment), ACCEPT);
+        Assert.assertEquals(nbAssessments.get(), 1);
+
+        // Different transaction
+        Assert.assertEquals(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.CAPTURE, UNBOUNDED, assessment), ACCEPT);
+        Assert.assertEquals(decisionCache.get(UUID.randomUUID(), "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment), ACCEPT);
+        Assert.assertEquals(nbAssessments.get(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testFailedAssessmentNotCached() throws Exception {
+        final DecisionCache decisionCache = new DecisionCache(Mockito.mock(AccertifyDao.class), new DefaultClock());
+        final UUID kbTenantId = UUID.randomUUID();
+
+        final AtomicInteger nbAssessments = new AtomicInteger();
+        final Callable<AccertifyDecision> assessment = new Callable<AccertifyDecision>() {
+            @Override
+            public AccertifyDecision call() throws Exception {
+                nbAssessments.incrementAndGet();
+                return null;
+            }
+        };
+
+        Assert.assertNull(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment));
+        Assert.assertNull(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment));
+        Assert.assertEquals(nbAssessments.get(), 2);
+        Assert.assertEquals(decisionCache.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testStoredDecision() throws Exception {
+        final AccertifyResponsesRecord response = new AccertifyResponsesRecord();
+        response.setRecommendationCode("REJECT");
+        response.setTotalScore("100");
+        response.setRulesTripped("velocity");
+        final AccertifyDao dao = Mockito.mock(AccertifyDao.class);
+        final UUID kbTenantId = UUID.randomUUID();
+        Mockito.when(dao.getLatestAssessedResponse(Mockito.eq("payment"),
+                                                   Mockito.eq("transaction"),
+                                                   Mockito.eq(TransactionType.AUTHORIZE),
+                                                   Mockito.<DateTime>any(),
+                                                   Mockito.eq(kbTenantId)))
+               .thenReturn(response);
+
+        final DecisionCache decisionCache = new DecisionCache(dao, new DefaultClock());
+        final Callable<AccertifyDecision> assessment = new Callable<AccertifyDecision>() {
+            @Override
+            public AccertifyDecision call() throws Exception {
+                Assert.fail("Accertify shouldn't be called");
+                return null;
+            }
+        };
+
+        final AccertifyDecision decision = decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, assessment);
+        Assert.assertEquals(decision, AccertifyDecision.of("REJECT", "100", "velocity"));
+        Assert.assertTrue(decision.isReject());
+    }
+
+    @Test(groups = "fast")
+    public void testWaitWithinLatencyBudget() throws Exception {
+        final DecisionCache decisionCache = new DecisionCache(Mockito.mock(AccertifyDao.class), new DefaultClock());
+        final UUID kbTenantId = UUID.randomUUID();
+
+        final CountDownLatch assessing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<AccertifyDecision> slowAssessment = new Callable<AccertifyDecision>() {
+            @Override
+            public AccertifyDecision call() throws Exception {
+                assessing.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return ACCEPT;
+            }
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<AccertifyDecision> first = executor.submit(new Callable<AccertifyDecision>() {
+                @Override
+                public AccertifyDecision call() throws Exception {
+                    return decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, UNBOUNDED, slowAssessment);
+                }
+            });
+            Assert.assertTrue(assessing.await(10, TimeUnit.SECONDS));
+
+            // The retry gives up when its own budget is exhausted
+            final long startMs = System.currentTimeMillis();
+            Assert.assertNull(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, LatencyBudget.start(100), slowAssessment));
+            Assert.assertTrue(System.currentTimeMillis() - startMs < 5000);
+
+            release.countDown();
+            Assert.assertEquals(first.get(10, TimeUnit.SECONDS), ACCEPT);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(decisionCache.get(kbTenantId, "payment", "transaction", TransactionType.AUTHORIZE, LatencyBudget.start(0), slowAssessment), ACCEPT);
+    }
+
+    @Test(groups = "fast")
+    public void testExhaustedLatencyBudget() throws Exception {
+        final AccertifyDao dao = Mockito.mock(AccertifyDao.class);
+        final DecisionCache decisionCache = new DecisionCache(dao, new DefaultClock());
+
+        final AtomicInteger nbAssessments = new AtomicInteger();
+        final Callable<AccertifyDecision> assessment = new Callable<AccertifyDecision>() {
+            @Override
+            public AccertifyDecision call() throws Exception {
+                // Applies the failure mode
+                nbAssessments.incrementAndGet();
+                return null;
+            }
+        };
+
+        Assert.assertNull(decisionCache.get(UUID.randomUUID(), "payment", "transaction", TransactionType.AUTHORIZE, LatencyBudget.start(0), assessment));
+        Assert.assertEquals(nbAssessments.get(), 1);
+        // No stored decision lookup
+        Mockito.verifyZeroInteractions(dao);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+public class TestLatencyBudget {
+
+    @Test(groups = "fast")
+    public void testBounded() {
+        final FakeTicker ticker = new FakeTicker();
+        final LatencyBudget latencyBudget = new LatencyBudget(300, ticker);
+        Assert.assertTrue(latencyBudget.isBounded());
+        Assert.assertFalse(latencyBudget.isExhausted());
+        Assert.assertEquals(latencyBudget.getRemainingMs(), 300);
+
+        ticker.advance(120);
+        Assert.assertFalse(latencyBudget.isExhausted());
+        Assert.assertEquals(latencyBudget.getRemainingMs(), 180);
+
+        ticker.advance(180);
+        Assert.assertTrue(latencyBudget.isExhausted());
+        Assert.assertEquals(latencyBudget.getRemainingMs(), 0);
+
+        ticker.advance(50);
+        Assert.assertEquals(latencyBudget.getRemainingMs(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testUnbounded() {
+        final FakeTicker ticker = new FakeTicker();
+        final LatencyBudget latencyBudget = new LatencyBudget(AccertifyClient.NO_LATENCY_BUDGET, ticker);
+        ticker.advance(TimeUnit.HOURS.toMillis(1));
+
+        Assert.assertFalse(latencyBudget.isBounded());
+        Assert.assertFalse(latencyBudget.isExhausted());
+        Assert.assertEquals(latencyBudget.getRemainingMs(), Long.MAX_VALUE);
+
+        Assert.assertFalse(LatencyBudget.unbounded().isBounded());
+        Assert.assertSame(LatencyBudget.start(AccertifyClient.NO_LATENCY_BUDGET), LatencyBudget.unbounded());
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private long nanos = 42;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long ms) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(ms);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.UUID;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentMethod;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPaymentMethodPluginCache {
+
+    @Test(groups = "fast")
+    public void testCachePerTenant() throws Exception {
+        final UUID paymentMethodId = UUID.randomUUID();
+        final PaymentMethod paymentMethod = Mockito.mock(PaymentMethod.class);
+        Mockito.when(paymentMethod.getPluginName()).thenReturn("killbill-ACME");
+        final TenantContext context = Mockito.mock(TenantContext.class);
+        Mockito.when(context.getTenantId()).thenReturn(UUID.randomUUID());
+        final TenantContext otherContext = Mockito.mock(TenantContext.class);
+        Mockito.when(otherContext.getTenantId()).thenReturn(UUID.randomUUID());
+
+        final PaymentApi paymentApi = Mockito.mock(PaymentApi.class);
+        Mockito.when(paymentApi.getPaymentMethodById(Mockito.eq(paymentMethodId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any()))
+               .thenReturn(paymentMethod);
+        final OSGIKillbillAPI killbillApi = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillApi.getPaymentApi()).thenReturn(paymentApi);
+
+        final PaymentMethodPluginCache paymentMethodPluginCache = new PaymentMethodPluginCache(killbillApi);
+        Assert.assertNull(paymentMethodPluginCache.getCachedPluginName(paymentMethodId, context));
+        Assert.assertEquals(paymentMethodPluginCache.getPluginName(paymentMethodId, context), "killbill-ACME");
+        Assert.assertEquals(paymentMethodPluginCache.getPluginName(paymentMethodId, context), "killbill-ACME");
+        Assert.assertEquals(paymentMethodPluginCache.getCachedPluginName(paymentMethodId, context), "killbill-ACME");
+        Mockito.verify(paymentApi, Mockito.times(1)).getPaymentMethodById(Mockito.eq(paymentMethodId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.eq(context));
+
+        // Not shared across tenants
+        Assert.assertNull(paymentMethodPluginCache.getCachedPluginName(paymentMethodId, otherContext));
+        Assert.assertEquals(paymentMethodPluginCache.getPluginName(paymentMethodId, otherContext), "killbill-ACME");
+        Mockito.verify(paymentApi, Mockito.times(1)).getPaymentMethodById(Mockito.eq(paymentMethodId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.eq(otherContext));
+        Assert.assertEquals(paymentMethodPluginCache.size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testUnknownPaymentMethod() throws Exception {
+        final PaymentApi paymentApi = Mockito.mock(PaymentApi.class);
+        Mockito.when(paymentApi.getPaymentMethodById(Mockito.<UUID>any(), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any()))
+               .thenThrow(Mockito.mock(PaymentApiException.class));
+        final OSGIKillbillAPI killbillApi = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillApi.getPaymentApi()).thenReturn(paymentApi);
+
+        final PaymentMethodPluginCache paymentMethodPluginCache = new PaymentMethodPluginCache(killbillApi);
+        Assert.assertNull(paymentMethodPluginCache.getPluginName(UUID.randomUUID(), Mockito.mock(TenantContext.class)));
+        Assert.assertEquals(paymentMethodPluginCache.size(), 0);
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.jooq.types.UInteger;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.accertify.client.AccertifyClient;
+import org.killbill.billing.plugin.accertify.client.AccertifyClientException;
+import org.killbill.billing.plugin.accertify.client.AccertifyDecision;
+import org.killbill.billing.plugin.accertify.client.TransactionResults;
+import org.killbill.billing.plugin.accertify.core.AccertifyConfigurationHandler;
+import org.killbill.billing.plugin.accertify.dao.AccertifyDao;
+import org.killbill.billing.plugin.accertify.dao.ReviewState;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyResponsesRecord;
+import org.killbill.billing.plugin.accertify.dao.gen.tables.records.AccertifyReviewsRecord;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.clock.DefaultClock;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestPostAuthorizationReviews {
+
+    private static final String PAYMENT_PLUGIN_NAME = "killbill-ACME";
+
+    private final UInteger recordId = UInteger.valueOf(12);
+    private final UUID kbPaymentId = UUID.randomUUID();
+
+    private AccertifyDao dao;
+    private AccertifyClient accertifyClient;
+    private PaymentApi paymentApi;
+    private Account account;
+    private AccertifyReviewsRecord review;
+    private PostAuthorizationReviews postAuthorizationReviews;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID kbAccountId = UUID.randomUUID();
+
+        review = new AccertifyReviewsRecord();
+        review.setRecordId(recordId);
+        review.setKbAccountId(kbAccountId.toString());
+        review.setKbPaymentMethodId(UUID.randomUUID().toString());
+        review.setKbPaymentId(kbPaymentId.toString());
+        review.setKbPaymentExternalKey("payment");
+        review.setKbPaymentTransactionId(UUID.randomUUID().toString());
+        review.setKbPaymentTransactionExternalKey("transaction");
+        review.setTransactionType(TransactionType.AUTHORIZE.name());
+        review.setAmount(BigDecimal.TEN);
+        review.setCurrency(Currency.USD.name());
+        review.setRequestPayload("<transactions><transaction/></transactions>");
+        review.setState(ReviewState.IN_PROGRESS.name());
+        review.setAttempts(0);
+        review.setCreatedDate(new Timestamp(System.currentTimeMillis()));
+        review.setKbTenantId(kbTenantId.toString());
+
+        dao = Mockito.mock(AccertifyDao.class);
+        Mockito.when(dao.claimReview(Mockito.eq(recordId), Mockito.<DateTime>any(), Mockito.<DateTime>any())).thenReturn(true);
+        Mockito.when(dao.getReview(recordId)).thenReturn(review);
+
+        accertifyClient = Mockito.mock(AccertifyClient.class);
+        final AccertifyConfigurationHandler accertifyConfigurationHandler = Mockito.mock(AccertifyConfigurationHandler.class);
+        Mockito.when(accertifyConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(accertifyClient);
+
+        final PaymentMethodPluginCache paymentMethodPluginCache = Mockito.mock(PaymentMethodPluginCache.class);
+        Mockito.when(paymentMethodPluginCache.getPluginName(Mockito.<UUID>any(), Mockito.<TenantContext>any())).thenReturn(PAYMENT_PLUGIN_NAME);
+
+        account = Mockito.mock(Account.class);
+        final AccountUserApi accountUserApi = Mockito.mock(AccountUserApi.class);
+        Mockito.when(accountUserApi.getAccountById(Mockito.eq(kbAccountId), Mockito.<TenantContext>any())).thenReturn(account);
+        paymentApi = Mockito.mock(PaymentApi.class);
+        final Payment payment = Mockito.mock(Payment.class);
+        Mockito.when(payment.getTransactions()).thenReturn(ImmutableList.<PaymentTransaction>of());
+        Mockito.when(paymentApi.getPayment(Mockito.eq(kbPaymentId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenReturn(payment);
+        final OSGIKillbillAPI killbillApi = Mockito.mock(OSGIKillbillAPI.class);
+        Mockito.when(killbillApi.getAccountUserApi()).thenReturn(accountUserApi);
+        Mockito.when(killbillApi.getPaymentApi()).thenReturn(paymentApi);
+
+        postAuthorizationReviews = new PostAuthorizationReviews(dao,
+                                                                accertifyConfigurationHandler,
+                                                                paymentMethodPluginCache,
+                                                                ImmutableList.<String>of(PAYMENT_PLUGIN_NAME),
+                                                                killbillApi,
+                                                                new DefaultClock(),
+                                                                1,
+                                                                3,
+                                                                60);
+    }
+
+    @Test(groups = "fast")
+    public void testVoidOnReject() throws Exception {
+        mockDecision("REJECT");
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verify(paymentApi).createVoid(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq("accertify-review-12"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.VOIDED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    @Test(groups = "fast")
+    public void testRefundOnReject() throws Exception {
+        review.setTransactionType(TransactionType.PURCHASE.name());
+        mockDecision("REJECT");
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verify(paymentApi).createRefund(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq(BigDecimal.TEN), Mockito.eq(Currency.USD), Mockito.eq("accertify-review-12"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.REFUNDED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    @Test(groups = "fast")
+    public void testRefundOnRejectOfCapturedAuthorization() throws Exception {
+        mockDecision("REJECT");
+        final Payment payment = mockPayment(BigDecimal.TEN, BigDecimal.TEN);
+
+        postAuthorizationReviews.process(recordId);
+
+        // Nothing left to void
+        Mockito.verify(paymentApi).createRefund(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq(BigDecimal.TEN), Mockito.eq(Currency.USD), Mockito.eq("accertify-review-12-refund"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(paymentApi, Mockito.never()).createVoid(Mockito.<Account>any(), Mockito.<UUID>any(), Mockito.anyString(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.REFUNDED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+
+        // Processed again: the refund isn't issued twice
+        final PaymentTransaction refund = Mockito.mock(PaymentTransaction.class);
+        Mockito.when(refund.getExternalKey()).thenReturn(PostAuthorizationReviews.getCaptureRefundTransactionExternalKey(recordId));
+        Mockito.when(refund.getTransactionStatus()).thenReturn(TransactionStatus.SUCCESS);
+        Mockito.when(payment.getRefundedAmount()).thenReturn(BigDecimal.TEN);
+        Mockito.when(payment.getTransactions()).thenReturn(ImmutableList.<PaymentTransaction>of(refund));
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verify(paymentApi, Mockito.times(1)).createRefund(Mockito.<Account>any(), Mockito.<UUID>any(), Mockito.<BigDecimal>any(), Mockito.<Currency>any(), Mockito.anyString(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+    }
+
+    @Test(groups = "fast")
+    public void testRefundAndVoidOnRejectOfPartiallyCapturedAuthorization() throws Exception {
+        mockDecision("REJECT");
+        mockPayment(BigDecimal.TEN, new BigDecimal("4"));
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verify(paymentApi).createRefund(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq(new BigDecimal("4")), Mockito.eq(Currency.USD), Mockito.eq("accertify-review-12-refund"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(paymentApi).createVoid(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq("accertify-review-12"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.REFUNDED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    @Test(groups = "fast")
+    public void testRefundNotIssuedTwice() throws Exception {
+        review.setTransactionType(TransactionType.PURCHASE.name());
+        mockDecision("REJECT");
+        // The refund succeeds, but the review state isn't updated
+        Mockito.doThrow(new SQLException("Connection reset"))
+               .doNothing()
+               .when(dao).updateReview(Mockito.eq(recordId), Mockito.<ReviewState>any(), Mockito.anyInt(), Mockito.<String>any(), Mockito.<DateTime>any());
+
+        postAuthorizationReviews.process(recordId);
+
+        // Claimed again once the claim expired: the stored REJECT and the refund are found
+        final AccertifyResponsesRecord response = new AccertifyResponsesRecord();
+        response.setRecommendationCode("REJECT");
+        Mockito.when(dao.getLatestAssessedResponse(Mockito.anyString(), Mockito.anyString(), Mockito.<TransactionType>any(), Mockito.<DateTime>any(), Mockito.<UUID>any())).thenReturn(response);
+        final PaymentTransaction refund = Mockito.mock(PaymentTransaction.class);
+        Mockito.when(refund.getExternalKey()).thenReturn(PostAuthorizationReviews.getTransactionExternalKey(recordId));
+        Mockito.when(refund.getTransactionStatus()).thenReturn(TransactionStatus.SUCCESS);
+        final Payment payment = Mockito.mock(Payment.class);
+        Mockito.when(payment.getTransactions()).thenReturn(ImmutableList.<PaymentTransaction>of(refund));
+        Mockito.when(paymentApi.getPayment(Mockito.eq(kbPaymentId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenReturn(payment);
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verify(paymentApi, Mockito.times(1)).createRefund(Mockito.eq(account), Mockito.eq(kbPaymentId), Mockito.eq(BigDecimal.TEN), Mockito.eq(Currency.USD), Mockito.eq("accertify-review-12"), Mockito.<Iterable<PluginProperty>>any(), Mockito.<CallContext>any());
+        Mockito.verify(dao, Mockito.times(2)).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.REFUNDED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    @Test(groups = "fast")
+    public void testAccept() throws Exception {
+        mockDecision("ACCEPT");
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verifyZeroInteractions(paymentApi);
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.ACCEPTED), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    @Test(groups = "fast")
+    public void testRetries() throws Exception {
+        Mockito.when(accertifyClient.assess(Mockito.<byte[]>any())).thenThrow(new AccertifyClientException("Accertify returned HTTP status 503"));
+
+        postAuthorizationReviews.process(recordId);
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.PENDING), Mockito.eq(1), Mockito.<String>any(), Mockito.<DateTime>any());
+
+        // Last attempt
+        review.setAttempts(2);
+        postAuthorizationReviews.process(recordId);
+        Mockito.verify(dao).updateReview(Mockito.eq(recordId), Mockito.eq(ReviewState.FAILED), Mockito.eq(3), Mockito.<String>any(), Mockito.<DateTime>any());
+        Mockito.verifyZeroInteractions(paymentApi);
+    }
+
+    @Test(groups = "fast")
+    public void testAlreadyClaimed() throws Exception {
+        Mockito.when(dao.claimReview(Mockito.eq(recordId), Mockito.<DateTime>any(), Mockito.<DateTime>any())).thenReturn(false);
+
+        postAuthorizationReviews.process(recordId);
+
+        Mockito.verifyZeroInteractions(accertifyClient);
+        Mockito.verify(dao, Mockito.never()).updateReview(Mockito.<UInteger>any(), Mockito.<ReviewState>any(), Mockito.anyInt(), Mockito.<String>any(), Mockito.<DateTime>any());
+    }
+
+    private Payment mockPayment(final BigDecimal authAmount, final BigDecimal capturedAmount) throws Exception {
+        final Payment payment = Mockito.mock(Payment.class);
+        Mockito.when(payment.getAuthAmount()).thenReturn(authAmount);
+        Mockito.when(payment.getCapturedAmount()).thenReturn(capturedAmount);
+        Mockito.when(payment.getRefundedAmount()).thenReturn(BigDecimal.ZERO);
+        Mockito.when(payment.getTransactions()).thenReturn(ImmutableList.<PaymentTransaction>of());
+        Mockito.when(paymentApi.getPayment(Mockito.eq(kbPaymentId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenReturn(payment);
+        return payment;
+    }
+
+    private void mockDecision(final String recommendationCode) throws AccertifyClientException {
+        final TransactionResults transactionResults = Mockito.mock(TransactionResults.class);
+        Mockito.when(transactionResults.getRecommendationCode()).thenReturn(recommendationCode);
+        Mockito.when(transactionResults.getDecision()).thenReturn(AccertifyDecision.of(recommendationCode, null, null));
+        Mockito.when(accertifyClient.assess(Mockito.<byte[]>any())).thenReturn(transactionResults);
+    }
+}
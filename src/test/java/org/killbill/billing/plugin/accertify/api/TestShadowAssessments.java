@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestShadowAssessments {
+
+    @Test(groups = "fast")
+    public void testBoundedQueue() throws Exception {
+        final ShadowAssessments shadowAssessments = new ShadowAssessments(1, 1);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(1);
+
+            // Slow Accertify
+            Assert.assertTrue(shadowAssessments.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("Failures don't kill the worker");
+                }
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // Queued
+            Assert.assertTrue(shadowAssessments.submit(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            }));
+
+            // Dropped
+            Assert.assertFalse(shadowAssessments.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Assert.fail();
+                }
+            }));
+            Assert.assertEquals(shadowAssessments.getNbDropped(), 1);
+
+            release.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            shadowAssessments.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
+
+import com.google.common.base.Charsets;
+
+// Not a test: run manually with
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.killbill.billing.plugin.accertify.client.AccertifyLoadGenerator
+// Any org.killbill.billing.plugin.accertify.* system property is passed to the client (e.g. hedging or circuit breaker
+// settings), the load and the stub behavior are configured with -Dload.threads, -Dload.durationSec, -Dload.fastMs,
+// -Dload.slowMs, -Dload.slowRatio, -Dload.fault (TIMEOUT, MALFORMED_XML, ERROR_BODY or HTTP_ERROR) and -Dload.faultRatio.
+public class AccertifyLoadGenerator {
+
+    private static final byte[] TRANSACTION = ("<transactions><transaction>" +
+                                               "<transactionID>load</transactionID>" +
+                                               "<transactionType>AUTHORIZE</transactionType>" +
+                                               "<totalAmount>112.44</totalAmount>" +
+                                               "<totalAmountCurrency>USD</totalAmountCurrency>" +
+                                               "</transaction></transactions>").getBytes(Charsets.UTF_8);
+
+    public static void main(final String[] args) throws Exception {
+        final int nbThreads = Integer.getInteger("load.threads", 32);
+        final long durationMs = TimeUnit.SECONDS.toMillis(Integer.getInteger("load.durationSec", 30));
+
+        final AccertifyStubServer server = new AccertifyStubServer().start();
+        server.setLatency(AccertifyStubServer.withTail(Long.getLong("load.fastMs", 20L),
+                                                       Long.getLong("load.slowMs", 2000L),
+                                                       Double.parseDouble(System.getProperty("load.slowRatio", "0.01"))));
+        final String fault = System.getProperty("load.fault");
+        if (fault != null) {
+            server.setFault(AccertifyStubServer.Fault.valueOf(fault), Double.parseDouble(System.getProperty("load.faultRatio", "0.01")));
+        }
+
+        final Properties properties = new Properties();
+        for (final Map.Entry<Object, Object> entry : System.getProperties().entrySet()) {
+            if (entry.getKey().toString().startsWith(AccertifyActivator.PROPERTY_PREFIX)) {
+                properties.put(entry.getKey(), entry.getValue());
+            }
+        }
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", server.getUrl());
+        final AccertifyClient client = new AccertifyClient(properties);
+
+        final long deadlineMs = System.currentTimeMillis() + durationMs;
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (int i = 0; i < nbThreads; i++) {
+            futures.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    final Result result = new Result();
+                    while (System.currentTimeMillis() < deadlineMs) {
+                        final long startNanos = System.nanoTime();
+                        try {
+                            client.assess(TRANSACTION);
+                            result.latenciesNanos.add(System.nanoTime() - startNanos);
+                        } catch (final AccertifyNotCalledException e) {
+                            result.nbNotCalled++;
+                        } catch (final AccertifyClientException e) {
+                            result.nbErrors++;
+                        }
+                    }
+                    return result;
+                }
+            }));
+        }
+
+        final List<Long> latenciesNanos = new ArrayList<Long>();
+        int nbErrors = 0;
+        int nbNotCalled = 0;
+        for (final Future<Result> future : futures) {
+            final Result result = future.get();
+            latenciesNanos.addAll(result.latenciesNanos);
+            nbErrors += result.nbErrors;
+            nbNotCalled += result.nbNotCalled;
+        }
+        executor.shutdown();
+        server.stop();
+        HttpTransports.closeAll();
+
+        final long[] sorted = new long[latenciesNanos.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latenciesNanos.get(i);
+        }
+        Arrays.sort(sorted);
+
+        System.out.println(String.format("Successes: %d (%.1f/s), errors: %d, not called: %d, requests received by the stub: %d",
+                                         sorted.length, sorted.length * 1000.0 / durationMs, nbErrors, nbNotCalled, server.getNbRequests()));
+        for (final double percentile : new double[]{50, 90, 99, 99.9, 100}) {
+            System.out.println(String.format("p%s: %.1fms", percentile, percentileMs(sorted, percentile)));
+        }
+    }
+
+    private static double percentileMs(final long[] sortedNanos, final double percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        final int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    private static final class Result {
+
+        private final List<Long> latenciesNanos = new ArrayList<Long>();
+        private int nbErrors;
+        private int nbNotCalled;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for Accertify, for tests and load tests: it accepts the <transactions> payloads (one or multiple
+ * transactions) and returns transaction-results based on rules matching the payload of each transaction
+ * (ACCEPT by default), echoing the transactionID as cross-reference.
+ * <p/>
+ * Latency (see LatencyDistribution) and faults (see Fault) can be injected, for all requests or when the payload
+ * matches a rule.
+ */
+public class AccertifyStubServer {
+
+    public enum Fault {
+        // No response until the client gives up (or the server is stopped)
+        TIMEOUT,
+        // Truncated transaction-results
+        MALFORMED_XML,
+        // <ERROR> body, with a 200 status
+        ERROR_BODY,
+        // 503 status
+        HTTP_ERROR
+    }
+
+    public interface LatencyDistribution {
+
+        long nextDelayMs(Random random);
+    }
+
+    private static final Pattern TRANSACTION_PATTERN = Pattern.compile("<transaction>(.*?)</transaction>", Pattern.DOTALL);
+    private static final Pattern TRANSACTION_ID_PATTERN = Pattern.compile("<transactionID>(.*?)</transactionID>", Pattern.DOTALL);
+    private static final long TIMEOUT_FAULT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final List<Rule> rules = new CopyOnWriteArrayList<Rule>();
+    private final Random random = new Random(42);
+    private final AtomicLong nbRequests = new AtomicLong();
+    private final AtomicLong nbTransactions = new AtomicLong();
+    private final AtomicLong transactionIds = new AtomicLong();
+
+    private volatile String defaultRecommendationCode = "ACCEPT";
+    private volatile LatencyDistribution latency = fixed(0);
+    private volatile Fault fault;
+    private volatile double faultRatio;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public static LatencyDistribution fixed(final long delayMs) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextDelayMs(final Random random) {
+                return delayMs;
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(final long minDelayMs, final long maxDelayMs) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextDelayMs(final Random random) {
+                return minDelayMs + (long) (random.nextDouble() * (maxDelayMs - minDelayMs));
+            }
+        };
+    }
+
+    // Typical provider profile: mostly fast, with a slow tail
+    public static LatencyDistribution withTail(final long fastDelayMs, final long slowDelayMs, final double slowRatio) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextDelayMs(final Random random) {
+                return random.nextDouble() < slowRatio ? slowDelayMs : fastDelayMs;
+            }
+        };
+    }
+
+    public AccertifyStubServer start() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new StubHandler());
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        // Interrupt the delayed responses
+        executor.shutdownNow();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/inbound";
+    }
+
+    public AccertifyStubServer setDefaultRecommendationCode(final String recommendationCode) {
+        this.defaultRecommendationCode = recommendationCode;
+        return this;
+    }
+
+    // First matching rule wins
+    public AccertifyStubServer addRule(final String payloadFragment, final String recommendationCode) {
+        rules.add(new Rule(payloadFragment, recommendationCode, null));
+        return this;
+    }
+
+    public AccertifyStubServer addFaultRule(final String payloadFragment, final Fault fault) {
+        rules.add(new Rule(payloadFragment, null, fault));
+        return this;
+    }
+
+    public AccertifyStubServer setLatency(final LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // Inject the fault in that ratio of the requests (null to disable)
+    public AccertifyStubServer setFault(final Fault fault, final double faultRatio) {
+        this.fault = fault;
+        this.faultRatio = faultRatio;
+        return this;
+    }
+
+    public AccertifyStubServer reset() {
+        rules.clear();
+        defaultRecommendationCode = "ACCEPT";
+        latency = fixed(0);
+        fault = null;
+        nbRequests.set(0);
+        nbTransactions.set(0);
+        return this;
+    }
+
+    public long getNbRequests() {
+        return nbRequests.get();
+    }
+
+    public long getNbTransactions() {
+        return nbTransactions.get();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException, InterruptedException {
+        nbRequests.incrementAndGet();
+        final String payload = readBody(exchange.getRequestBody());
+
+        final List<String> transactions = new ArrayList<String>();
+        final Matcher transactionMatcher = TRANSACTION_PATTERN.matcher(payload);
+        while (transactionMatcher.find()) {
+            transactions.add(transactionMatcher.group(1));
+        }
+        nbTransactions.addAndGet(transactions.size());
+
+        final long delayMs;
+        Fault requestFault = null;
+        synchronized (random) {
+            delayMs = latency.nextDelayMs(random);
+            if (fault != null && random.nextDouble() < faultRatio) {
+                requestFault = fault;
+            }
+        }
+        for (final String transaction : transactions) {
+            final Rule rule = findRule(transaction);
+            if (requestFault == null && rule != null && rule.fault != null) {
+                requestFault = rule.fault;
+            }
+        }
+
+        if (delayMs > 0) {
+            Thread.sleep(delayMs);
+        }
+
+        if (requestFault == Fault.TIMEOUT) {
+            Thread.sleep(TIMEOUT_FAULT_MS);
+        } else if (requestFault == Fault.HTTP_ERROR) {
+            respond(exchange, 503, "Service Unavailable");
+        } else if (requestFault == Fault.ERROR_BODY) {
+            respond(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><ERROR>The request could not be processed</ERROR>");
+        } else if (requestFault == Fault.MALFORMED_XML) {
+            respond(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><transaction-results><transaction-id>stub</transac");
+        } else if (transactions.size() == 1) {
+            respond(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + buildTransactionResults(transactions.get(0)));
+        } else {
+            final StringBuilder response = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><transactions-results>");
+            for (final String transaction : transactions) {
+                response.append(buildTransactionResults(transaction));
+            }
+            respond(exchange, 200, response.append("</transactions-results>").toString());
+        }
+    }
+
+    private String buildTransactionResults(final String transaction) {
+        final Rule rule = findRule(transaction);
+        final String recommendationCode = rule != null && rule.recommendationCode != null ? rule.recommendationCode : defaultRecommendationCode;
+        final Matcher transactionIdMatcher = TRANSACTION_ID_PATTERN.matcher(transaction);
+        final String crossReference = transactionIdMatcher.find() ? transactionIdMatcher.group(1) : "";
+
+        return "<transaction-results>" +
+               "<transaction-id>stub-" + transactionIds.incrementAndGet() + "</transaction-id>" +
+               "<cross-reference>" + crossReference + "</cross-reference>" +
+               "<rules-tripped>" + (rule == null ? "" : "stub rule") + "</rules-tripped>" +
+               "<total-score>" + ("REJECT".equals(recommendationCode) ? "100" : "0") + "</total-score>" +
+               "<recommendation-code>" + recommendationCode + "</recommendation-code>" +
+               "<remarks/>" +
+               "</transaction-results>";
+    }
+
+    private Rule findRule(final String transaction) {
+        for (final Rule rule : rules) {
+            if (transaction.contains(rule.payloadFragment)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static String readBody(final InputStream body) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        body.close();
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private final class StubHandler implements HttpHandler {
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                AccertifyStubServer.this.handle(exchange);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static final class Rule {
+
+        private final String payloadFragment;
+        private final String recommendationCode;
+        private final Fault fault;
+
+        private Rule(final String payloadFragment, final String recommendationCode, final Fault fault) {
+            this.payloadFragment = payloadFragment;
+            this.recommendationCode = recommendationCode;
+            this.fault = fault;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+// Not a test: run manually with
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.killbill.billing.plugin.accertify.client.RequestBuilderBenchmark
+// Run with -prof gc to compare the allocation rates (gc.alloc.rate.norm) of both approaches.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+    // Number of orderDetail line items in the realistic payload
+    @Param({"1", "20"})
+    public int lineItems;
+
+    @Param({"SORTED", "INSERTION"})
+    public RequestOrdering ordering;
+
+    @Param({"TREE", "STREAMING"})
+    public RequestBuilder.Mode mode;
+
+    private String[][] payload;
+
+    @Setup
+    public void setUp() {
+        final String[][] header = new String[][]{
+                {"transactionType", "AUTHORIZE"},
+                {"transactionDateTime", "2017-03-14 10:12:04"},
+                {"totalAmount", "112.44"},
+                {"totalAmountCurrency", "USD"},
+                {"ipAddress", "127.0.0.1"},
+                {"customerInformation->userId", "12345"},
+                {"customerInformation->userFirstName", "John"},
+                {"customerInformation->userLastName", "Doe"},
+                {"customerInformation->userEmail", "john@example.com"},
+                {"collectionTransaction->cardDetails->billingFirstName", "John"},
+                {"collectionTransaction->cardDetails->billingLastName", "Doe"},
+                {"collectionTransaction->cardDetails->billingAddress1", "1 Main street"},
+                {"collectionTransaction->cardDetails->billingCity", "San Francisco"},
+                {"collectionTransaction->cardDetails->billingRegion", "CA"},
+                {"collectionTransaction->cardDetails->billingPostalCode", "94105"},
+                {"collectionTransaction->cardDetails->billingCountry", "US"}};
+        payload = new String[header.length + 3 * lineItems][];
+        System.arraycopy(header, 0, payload, 0, header.length);
+        for (int i = 0; i < lineItems; i++) {
+            payload[header.length + 3 * i] = new String[]{"orderDetails->orderDetail[" + i + "]->shippingName", "Jane Doe"};
+            payload[header.length + 3 * i + 1] = new String[]{"orderDetails->orderDetail[" + i + "]->itemPrice", "5.62"};
+            payload[header.length + 3 * i + 2] = new String[]{"orderDetails->orderDetail[" + i + "]->itemQuantity", "1"};
+        }
+    }
+
+    // Previous behavior: a new XmlMapper (and cold serializer caches) for each request
+    @Benchmark
+    public String newMapperPerRequest() throws JsonProcessingException {
+        return XmlMapperProvider.get().writeValueAsString(buildTransactions());
+    }
+
+    @Benchmark
+    public String sharedWriter() throws JsonProcessingException {
+        return XmlMapperProvider.getTransactionsWriter().writeValueAsString(buildTransactions());
+    }
+
+    // Compare the SORTED and INSERTION orderings on a realistic payload
+    @Benchmark
+    public byte[] requestBuilder() throws AccertifyClientException {
+        final RequestBuilder requestBuilder = new RequestBuilder(mode, ordering);
+        for (final String[] entry : payload) {
+            requestBuilder.addTransactionEntry(entry[0], entry[1]);
+        }
+        return requestBuilder.buildAsBytes();
+    }
+
+    private Transactions buildTransactions() {
+        final Transaction transaction = new Transaction();
+        transaction.put("ipAddress", "127.0.0.1");
+        transaction.put("totalAmount", "12.44");
+        transaction.put("totalAmountCurrency", "USD");
+        final Transactions transactions = new Transactions();
+        transactions.getTransactions().add(transaction);
+        return transactions;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(RequestBuilderBenchmark.class.getSimpleName())
+                                                    .build();
+        new Runner(options).run();
+    }
+}
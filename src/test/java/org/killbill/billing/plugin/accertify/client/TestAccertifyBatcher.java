@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestAccertifyBatcher {
+
+    @Test(groups = "fast")
+    public void testBatchIsSplitByCrossReference() throws Exception {
+        final StubAccertifyClient client = new StubAccertifyClient(3);
+        final AccertifyBatcher batcher = client.getBatcher();
+        Assert.assertNotNull(batcher);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final List<Future<TransactionResults>> futures = new ArrayList<Future<TransactionResults>>();
+            for (int i = 0; i < 3; i++) {
+                final List<RequestEntry> transaction = ImmutableList.<RequestEntry>of(new RequestEntry(RequestPath.compile("transactionID"), "tx-" + i),
+                                                                                      new RequestEntry(RequestPath.compile("ipAddress"), "127.0.0.1"));
+                futures.add(executor.submit(new Callable<TransactionResults>() {
+                    @Override
+                    public TransactionResults call() throws Exception {
+                        return batcher.assess(transaction);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(futures.get(i).get().getCrossReference(), "tx-" + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // A single HTTP call for the three transactions
+        Assert.assertEquals(client.batchCalls.get(), 1);
+        Assert.assertEquals(client.singleCalls.get(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testBatchIsSentAfterDelay() throws Exception {
+        final StubAccertifyClient client = new StubAccertifyClient(10);
+
+        final List<RequestEntry> transaction = ImmutableList.<RequestEntry>of(new RequestEntry(RequestPath.compile("transactionID"), "tx-0"));
+        Assert.assertEquals(client.getBatcher().assess(transaction).getCrossReference(), "tx-0");
+
+        // Sent on its own after the delay
+        Assert.assertEquals(client.batchCalls.get(), 0);
+        Assert.assertEquals(client.singleCalls.get(), 1);
+    }
+
+    private static final class StubAccertifyClient extends AccertifyClient {
+
+        private final AtomicInteger batchCalls = new AtomicInteger();
+        private final AtomicInteger singleCalls = new AtomicInteger();
+
+        private StubAccertifyClient(final int batchMaxSize) throws Exception {
+            super(buildProperties(batchMaxSize));
+        }
+
+        @Override
+        public TransactionResults assess(final byte[] transactions) throws AccertifyClientException {
+            singleCalls.incrementAndGet();
+            try {
+                return XmlMapperProvider.getTransactionResultsReader().readValue(buildTransactionResults(0));
+            } catch (final Exception e) {
+                throw new AccertifyClientException(e);
+            }
+        }
+
+        @Override
+        public List<TransactionResults> assessBatch(final byte[] transactions) throws AccertifyClientException {
+            batchCalls.incrementAndGet();
+            // Results in a different order than the transactions
+            final StringBuilder xml = new StringBuilder("<transactions-results>");
+            for (int i = 2; i >= 0; i--) {
+                xml.append(buildTransactionResults(i));
+            }
+            xml.append("</transactions-results>");
+            try {
+                final TransactionResultsList transactionResultsList = XmlMapperProvider.getTransactionResultsListReader().readValue(xml.toString());
+                return transactionResultsList.getTransactionResults();
+            } catch (final Exception e) {
+                throw new AccertifyClientException(e);
+            }
+        }
+
+        private static String buildTransactionResults(final int i) {
+            return "<transaction-results>" +
+                   "<transaction-id>" + i + "</transaction-id>" +
+                   "<cross-reference>tx-" + i + "</cross-reference>" +
+                   "<recommendation-code>ACCEPT</recommendation-code>" +
+                   "</transaction-results>";
+        }
+
+        private static Properties buildProperties(final int batchMaxSize) {
+            final Properties properties = new Properties();
+            properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", "http://127.0.0.1:1");
+            properties.put(AccertifyActivator.PROPERTY_PREFIX + "batchMaxSize", String.valueOf(batchMaxSize));
+            properties.put(AccertifyActivator.PROPERTY_PREFIX + "batchMaxDelayMs", "50");
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestAccertifyClient {
+
+    @Test(groups = "fast")
+    public void testAssessAsyncConnectionError() throws Exception {
+        final Properties properties = new Properties();
+        // Nothing listens there
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", "http://127.0.0.1:1/");
+        final AccertifyClient client = new AccertifyClient(properties);
+
+        final ListenableFuture<TransactionResults> future = client.assessAsync(null);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+
+        try {
+            client.assess((byte[]) null);
+            Assert.fail();
+        } catch (final AccertifyClientException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testAdaptiveTimeout() throws Exception {
+        final Properties properties = new Properties();
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", "http://127.0.0.1:1/");
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "adaptiveTimeoutMultiplier", "3");
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "adaptiveTimeoutMinMs", "500");
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "adaptiveTimeoutMaxMs", "5000");
+        final AccertifyClient client = new AccertifyClient(properties);
+
+        // Not enough samples yet
+        Assert.assertEquals(client.getRequestTimeoutMs(TransactionResults.class), TimeUnit.SECONDS.toMillis(70));
+
+        for (int i = 0; i < 200; i++) {
+            client.getLatencies().record(250);
+        }
+        // 3 x p99 (within the histogram precision)
+        final long timeoutMs = client.getRequestTimeoutMs(TransactionResults.class);
+        Assert.assertTrue(timeoutMs >= 750 && timeoutMs <= 825, "Got " + timeoutMs);
+        // Batches aren't affected
+        Assert.assertEquals(client.getRequestTimeoutMs(TransactionResultsList.class), TimeUnit.SECONDS.toMillis(70));
+
+        // Clamped
+        for (int i = 0; i < 200; i++) {
+            client.getLatencies().record(10000);
+        }
+        Assert.assertEquals(client.getRequestTimeoutMs(TransactionResults.class), 5000);
+    }
+
+    @Test(groups = "fast")
+    public void testFixedTimeout() throws Exception {
+        final Properties properties = new Properties();
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", "http://127.0.0.1:1/");
+        final AccertifyClient client = new AccertifyClient(properties);
+
+        for (int i = 0; i < 200; i++) {
+            client.getLatencies().record(250);
+        }
+        Assert.assertEquals(client.getRequestTimeoutMs(TransactionResults.class), TimeUnit.SECONDS.toMillis(70));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestAccertifyDecision {
+
+    @Test(groups = "fast")
+    public void testDecision() {
+        final AccertifyDecision decision = AccertifyDecision.of("REJECT", " 87 ", "Velocity check, Email domain,");
+        Assert.assertEquals(decision.getRecommendation(), Recommendation.REJECT);
+        Assert.assertTrue(decision.isReject());
+        Assert.assertTrue(decision.hasScore());
+        Assert.assertEquals(decision.getTotalScore(), 87);
+        Assert.assertEquals(decision.getNbRulesTripped(), 2);
+        Assert.assertEquals(decision.getRulesTripped(), ImmutableList.<String>of("Velocity check", "Email domain"));
+
+        // Rules are interned
+        final AccertifyDecision otherDecision = AccertifyDecision.of("REJECT", "87", new String("Velocity check,Email domain"));
+        Assert.assertSame(otherDecision.getRuleTripped(0), decision.getRuleTripped(0));
+        Assert.assertEquals(otherDecision, decision);
+    }
+
+    @Test(groups = "fast")
+    public void testUnknownValues() {
+        final AccertifyDecision decision = AccertifyDecision.of("SOMETHING_NEW", "n/a", null);
+        Assert.assertEquals(decision.getRecommendation(), Recommendation.UNKNOWN);
+        Assert.assertFalse(decision.isReject());
+        Assert.assertFalse(decision.hasScore());
+        Assert.assertEquals(decision.getNbRulesTripped(), 0);
+
+        Assert.assertEquals(AccertifyDecision.of(null, null, "").getRecommendation(), Recommendation.UNKNOWN);
+        Assert.assertEquals(Recommendation.fromCode("ACCEPT"), Recommendation.ACCEPT);
+        // Only the exact codes are recognized
+        Assert.assertEquals(Recommendation.fromCode("reject"), Recommendation.UNKNOWN);
+        Assert.assertEquals(Recommendation.fromCode(" REJECT"), Recommendation.UNKNOWN);
+        Assert.assertEquals(Recommendation.fromCode("UNKNOWN"), Recommendation.UNKNOWN);
+    }
+
+    @Test(groups = "fast")
+    public void testFromResponse() throws Exception {
+        final TransactionResults transactionResults = ResponseParser.parseTransactionResults("<transaction-results>" +
+                                                                                             "<rules-tripped>Velocity check</rules-tripped>" +
+                                                                                             "<total-score>42</total-score>" +
+                                                                                             "<recommendation-code>REVIEW</recommendation-code>" +
+                                                                                             "</transaction-results>");
+        Assert.assertEquals(transactionResults.getDecision().getRecommendation(), Recommendation.REVIEW);
+        Assert.assertEquals(transactionResults.getDecision().getTotalScore(), 42);
+        Assert.assertEquals(transactionResults.getDecision().getRulesTripped(), ImmutableList.<String>of("Velocity check"));
+    }
+}
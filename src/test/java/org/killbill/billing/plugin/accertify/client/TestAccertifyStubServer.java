@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.killbill.billing.plugin.accertify.core.AccertifyActivator;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Throwables;
+
+public class TestAccertifyStubServer {
+
+    private static final String TRANSACTION = "<transactions><transaction><transactionID>tx-1</transactionID><totalAmount>10</totalAmount></transaction></transactions>";
+
+    private AccertifyStubServer server;
+
+    @BeforeClass(groups = "fast")
+    public void setUpBeforeClass() throws Exception {
+        server = new AccertifyStubServer().start();
+    }
+
+    @AfterClass(groups = "fast")
+    public void tearDownAfterClass() throws Exception {
+        server.stop();
+    }
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        server.reset();
+    }
+
+    @Test(groups = "fast")
+    public void testRules() throws Exception {
+        server.addRule("<totalAmount>666</totalAmount>", "REJECT");
+        final AccertifyClient client = newClient(new Properties());
+
+        final TransactionResults accepted = client.assess(TRANSACTION);
+        Assert.assertEquals(accepted.getRecommendationCode(), "ACCEPT");
+        Assert.assertEquals(accepted.getCrossReference(), "tx-1");
+        Assert.assertFalse(accepted.getDecision().isReject());
+
+        final TransactionResults rejected = client.assess(TRANSACTION.replace("<totalAmount>10</totalAmount>", "<totalAmount>666</totalAmount>"));
+        Assert.assertEquals(rejected.getRecommendationCode(), "REJECT");
+        Assert.assertTrue(rejected.getDecision().isReject());
+
+        server.setDefaultRecommendationCode("REVIEW");
+        Assert.assertEquals(client.assess(TRANSACTION).getRecommendationCode(), "REVIEW");
+        Assert.assertEquals(server.getNbRequests(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testBatch() throws Exception {
+        server.addRule("<transactionID>tx-2</transactionID>", "REJECT");
+        final AccertifyClient client = newClient(new Properties());
+
+        final List<TransactionResults> results = client.assessBatch(("<transactions>" +
+                                                                     "<transaction><transactionID>tx-1</transactionID></transaction>" +
+                                                                     "<transaction><transactionID>tx-2</transactionID></transaction>" +
+                                                                     "</transactions>").getBytes("UTF-8"));
+        Assert.assertEquals(results.size(), 2);
+        Assert.assertEquals(results.get(0).getCrossReference(), "tx-1");
+        Assert.assertEquals(results.get(0).getRecommendationCode(), "ACCEPT");
+        Assert.assertEquals(results.get(1).getCrossReference(), "tx-2");
+        Assert.assertEquals(results.get(1).getRecommendationCode(), "REJECT");
+        Assert.assertEquals(server.getNbRequests(), 1);
+        Assert.assertEquals(server.getNbTransactions(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testFaults() throws Exception {
+        final AccertifyClient client = newClient(new Properties());
+
+        for (final AccertifyStubServer.Fault fault : new AccertifyStubServer.Fault[]{AccertifyStubServer.Fault.MALFORMED_XML,
+                                                                                      AccertifyStubServer.Fault.ERROR_BODY,
+                                                                                      AccertifyStubServer.Fault.HTTP_ERROR}) {
+            server.setFault(fault, 1);
+            try {
+                client.assess(TRANSACTION);
+                Assert.fail("Expected a failure for " + fault);
+            } catch (final AccertifyClientException e) {
+                Assert.assertFalse(e instanceof AccertifyNotCalledException, fault.toString());
+            }
+        }
+
+        // Rule-based fault
+        server.setFault(null, 0);
+        server.addFaultRule("<transactionID>tx-1</transactionID>", AccertifyStubServer.Fault.ERROR_BODY);
+        try {
+            client.assess(TRANSACTION);
+            Assert.fail();
+        } catch (final AccertifyClientException e) {
+            Assert.assertTrue(Throwables.getStackTraceAsString(e).contains("Accertify returned an error"));
+        }
+        Assert.assertEquals(client.assess(TRANSACTION.replace("tx-1", "tx-3")).getRecommendationCode(), "ACCEPT");
+    }
+
+    @Test(groups = "fast")
+    public void testTimeout() throws Exception {
+        server.setFault(AccertifyStubServer.Fault.TIMEOUT, 1);
+        final AccertifyClient client = newClient(new Properties());
+
+        final long startMs = System.currentTimeMillis();
+        try {
+            client.assess(TRANSACTION.getBytes("UTF-8"), 200);
+            Assert.fail();
+        } catch (final AccertifyClientException e) {
+            Assert.assertTrue(e.getMessage().contains("No response from Accertify"), e.getMessage());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - startMs < 5000);
+    }
+
+    @Test(groups = "fast")
+    public void testCancelledCallLatencyIsRecorded() throws Exception {
+        server.setLatency(AccertifyStubServer.fixed(1000));
+        final AccertifyClient client = newClient(new Properties());
+
+        try {
+            // Latency budget exhausted
+            client.assess(TRANSACTION.getBytes("UTF-8"), 100);
+            Assert.fail();
+        } catch (final AccertifyClientException e) {
+            Assert.assertTrue(e.getMessage().contains("No response from Accertify"), e.getMessage());
+        }
+
+        // Lower bound of the actual latency
+        Assert.assertEquals(client.getLatencies().getTotalCount(), 1);
+        Assert.assertTrue(client.getLatencies().getPercentileMs(50) >= 100);
+    }
+
+    @Test(groups = "fast")
+    public void testLatency() throws Exception {
+        server.setLatency(AccertifyStubServer.fixed(100));
+        final AccertifyClient client = newClient(new Properties());
+
+        final long startMs = System.currentTimeMillis();
+        client.assess(TRANSACTION);
+        Assert.assertTrue(System.currentTimeMillis() - startMs >= 100);
+    }
+
+    @Test(groups = "fast")
+    public void testCircuitBreakerOpens() throws Exception {
+        server.setFault(AccertifyStubServer.Fault.HTTP_ERROR, 1);
+        final Properties properties = new Properties();
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "circuitBreakerFailureRate", "50");
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "circuitBreakerWindowSize", "5");
+        final AccertifyClient client = newClient(properties);
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.assess(TRANSACTION);
+                Assert.fail();
+            } catch (final AccertifyClientException e) {
+                Assert.assertFalse(e instanceof CircuitBreakerOpenException);
+            }
+        }
+        // The breaker is updated by a listener, which can run after assess returned
+        final long deadlineMs = System.currentTimeMillis() + 5000;
+        while (client.getCircuitBreaker().getState() != CircuitBreaker.State.OPEN && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(client.getCircuitBreaker().getState(), CircuitBreaker.State.OPEN);
+
+        // Accertify isn't called anymore
+        try {
+            client.assess(TRANSACTION);
+            Assert.fail();
+        } catch (final CircuitBreakerOpenException e) {
+            Assert.assertEquals(server.getNbRequests(), 5);
+        }
+    }
+
+    private AccertifyClient newClient(final Properties properties) {
+        properties.put(AccertifyActivator.PROPERTY_PREFIX + "url", server.getUrl());
+        return new AccertifyClient(properties);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.catalog.api.Currency;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestAccountFieldMapping {
+
+    @Test(groups = "fast")
+    public void testAddEntries() throws AccertifyClientException {
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getName()).thenReturn("John Doe");
+        Mockito.when(account.getFirstNameLength()).thenReturn(4);
+        Mockito.when(account.getEmail()).thenReturn("john@example.com");
+        Mockito.when(account.getCurrency()).thenReturn(Currency.USD);
+
+        final AccountFieldMapping accountFieldMapping = AccountFieldMapping.compile(ImmutableMap.<String, String>of("collectionTransaction->billingFirstName", "FIRST_NAME",
+                                                                                                                  "collectionTransaction->billingLastName", "last_name",
+                                                                                                                  "collectionTransaction->billingEmail", "EMAIL",
+                                                                                                                  "collectionTransaction->billingPhone", "PHONE",
+                                                                                                                  "totalAmountCurrency", "CURRENCY"));
+        Assert.assertFalse(accountFieldMapping.isEmpty());
+
+        final List<RequestEntry> entries = new ArrayList<RequestEntry>();
+        accountFieldMapping.addEntries(account, entries);
+
+        // No phone on the account
+        final String xml = new RequestBuilder().addTransactionEntries(entries).build();
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<collectionTransaction>" +
+                                 "<billingEmail>john@example.com</billingEmail>" +
+                                 "<billingFirstName>John</billingFirstName>" +
+                                 "<billingLastName>Doe</billingLastName>" +
+                                 "</collectionTransaction>" +
+                                 "<totalAmountCurrency>USD</totalAmountCurrency>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownAccountField() {
+        AccountFieldMapping.compile(ImmutableMap.<String, String>of("collectionTransaction->billingFirstName", "NICKNAME"));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+
+public class TestAssessmentPolicy {
+
+    private static final Supplier<String> ACME = Suppliers.ofInstance("killbill-ACME");
+
+    @Test(groups = "fast")
+    public void testDefault() throws Exception {
+        final AssessmentPolicy policy = AssessmentPolicy.compile(ImmutableMap.<String, String>of());
+        Assert.assertEquals(policy.decide(TransactionType.REFUND, BigDecimal.ONE, Currency.USD, ACME), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+        Assert.assertEquals(policy.decide(null, null, null, ACME), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+    }
+
+    @Test(groups = "fast")
+    public void testRules() throws Exception {
+        final AssessmentPolicy policy = AssessmentPolicy.compile(ImmutableMap.<String, String>of("01", "transactionType: REFUND, VOID,CREDIT -> SKIP",
+                                                                                                 "02", "transactionType:AUTHORIZE,PURCHASE; maxAmount:0 -> skip",
+                                                                                                 "03", "currency:USD,EUR;maxAmount:1.00 -> SKIP",
+                                                                                                 "04", "plugin:killbill-paypal-express -> ASSESS_ONLY",
+                                                                                                 "default", "ASSESS_AND_ENFORCE"));
+
+        Assert.assertEquals(policy.decide(TransactionType.REFUND, new BigDecimal("500"), Currency.USD, ACME), AssessmentPolicy.Action.SKIP);
+        Assert.assertEquals(policy.decide(TransactionType.VOID, null, null, ACME), AssessmentPolicy.Action.SKIP);
+
+        // $0 verification
+        Assert.assertEquals(policy.decide(TransactionType.AUTHORIZE, BigDecimal.ZERO, Currency.GBP, ACME), AssessmentPolicy.Action.SKIP);
+        Assert.assertEquals(policy.decide(TransactionType.CAPTURE, BigDecimal.ZERO, Currency.GBP, ACME), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+
+        // Tiny amounts (inclusive)
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, new BigDecimal("1"), Currency.EUR, ACME), AssessmentPolicy.Action.SKIP);
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, new BigDecimal("1.01"), Currency.EUR, ACME), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, new BigDecimal("0.50"), Currency.GBP, ACME), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+
+        // Payment plugin
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, new BigDecimal("20"), Currency.USD, Suppliers.ofInstance("killbill-paypal-express")), AssessmentPolicy.Action.ASSESS_ONLY);
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, new BigDecimal("20"), Currency.USD, Suppliers.<String>ofInstance(null)), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+    }
+
+    @Test(groups = "fast")
+    public void testRuleOrder() throws Exception {
+        // 2 is evaluated before 10 (and not in string order)
+        final AssessmentPolicy policy = AssessmentPolicy.compile(ImmutableMap.<String, String>of("10", "transactionType:AUTHORIZE -> ASSESS_ONLY",
+                                                                                                 "2", "transactionType:AUTHORIZE;maxAmount:0 -> SKIP",
+                                                                                                 "zz", "transactionType:PURCHASE -> SKIP",
+                                                                                                 "3", "transactionType:PURCHASE -> ASSESS_ONLY"));
+        Assert.assertEquals(policy.decide(TransactionType.AUTHORIZE, BigDecimal.ZERO, Currency.USD, ACME), AssessmentPolicy.Action.SKIP);
+        Assert.assertEquals(policy.decide(TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.USD, ACME), AssessmentPolicy.Action.ASSESS_ONLY);
+        // Numeric keys first
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, BigDecimal.TEN, Currency.USD, ACME), AssessmentPolicy.Action.ASSESS_ONLY);
+    }
+
+    @Test(groups = "fast")
+    public void testLazyPluginLookup() throws Exception {
+        final AssessmentPolicy policy = AssessmentPolicy.compile(ImmutableMap.<String, String>of("1", "transactionType:REFUND -> SKIP",
+                                                                                                 "2", "transactionType:PURCHASE;plugin:killbill-ACME -> ASSESS_ONLY"));
+        final AtomicInteger nbLookups = new AtomicInteger();
+        final Supplier<String> pluginName = new Supplier<String>() {
+            @Override
+            public String get() {
+                nbLookups.incrementAndGet();
+                return "killbill-ACME";
+            }
+        };
+
+        Assert.assertEquals(policy.decide(TransactionType.REFUND, BigDecimal.TEN, Currency.USD, pluginName), AssessmentPolicy.Action.SKIP);
+        Assert.assertEquals(policy.decide(TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.USD, pluginName), AssessmentPolicy.Action.ASSESS_AND_ENFORCE);
+        Assert.assertEquals(nbLookups.get(), 0);
+
+        Assert.assertEquals(policy.decide(TransactionType.PURCHASE, BigDecimal.TEN, Currency.USD, pluginName), AssessmentPolicy.Action.ASSESS_ONLY);
+        Assert.assertEquals(nbLookups.get(), 1);
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownCondition() throws Exception {
+        AssessmentPolicy.compile(ImmutableMap.<String, String>of("1", "country:US -> SKIP"));
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class)
+    public void testMissingAction() throws Exception {
+        AssessmentPolicy.compile(ImmutableMap.<String, String>of("1", "transactionType:REFUND"));
+    }
+}
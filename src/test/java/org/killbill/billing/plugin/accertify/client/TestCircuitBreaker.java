@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestCircuitBreaker {
+
+    private static final int WINDOW_SIZE = 10;
+    private static final long SLOW_CALL_MS = 1000;
+    private static final long OPEN_MS = 30000;
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test(groups = "fast")
+    public void testOpensOnErrors() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+
+        // Not enough calls yet
+        for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+            circuitBreaker.execute(failure());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        circuitBreaker.execute(failure());
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        // Short-circuited
+        final CountingSupplier call = success();
+        assertShortCircuited(circuitBreaker.execute(call));
+        Assert.assertEquals(call.nbCalls, 0);
+    }
+
+    @Test(groups = "fast")
+    public void testFailureRate() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+
+        // Two failures out of five, below the threshold
+        for (int i = 0; i < 5 * WINDOW_SIZE; i++) {
+            circuitBreaker.execute(i % 5 < 2 ? failure() : success());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < WINDOW_SIZE / 2; i++) {
+            circuitBreaker.execute(failure());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testOpensOnSlowCalls() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            final SettableFuture<String> response = SettableFuture.<String>create();
+            circuitBreaker.execute(constant(response));
+            ticker.advance(SLOW_CALL_MS);
+            response.set("slow");
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testHalfOpen() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            circuitBreaker.execute(failure());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        ticker.advance(OPEN_MS);
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+
+        // A failed probe re-opens the circuit
+        circuitBreaker.execute(failure());
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        ticker.advance(OPEN_MS);
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; i++) {
+            Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+
+            // One probe at a time
+            final SettableFuture<String> probe = SettableFuture.<String>create();
+            final ListenableFuture<String> result = circuitBreaker.execute(constant(probe));
+            assertShortCircuited(circuitBreaker.execute(success()));
+
+            probe.set("ok");
+            Assert.assertEquals(result.get(), "ok");
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        // Fresh window
+        for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+            circuitBreaker.execute(failure());
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test(groups = "fast")
+    public void testCancelledCallsAreIgnored() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+
+        // Latency budget exhausted
+        for (int i = 0; i < 2 * WINDOW_SIZE; i++) {
+            final SettableFuture<String> response = SettableFuture.<String>create();
+            circuitBreaker.execute(constant(response)).cancel(true);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            circuitBreaker.execute(failure());
+        }
+        ticker.advance(OPEN_MS);
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+
+        // A cancelled probe lets another call probe
+        final SettableFuture<String> probe = SettableFuture.<String>create();
+        circuitBreaker.execute(constant(probe)).cancel(true);
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        Assert.assertEquals(circuitBreaker.execute(success()).get(), "ok");
+    }
+
+    @Test(groups = "fast")
+    public void testSlowCancelledCallsAreFailures() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            final SettableFuture<String> response = SettableFuture.<String>create();
+            final ListenableFuture<String> result = circuitBreaker.execute(constant(response));
+            ticker.advance(SLOW_CALL_MS);
+            result.cancel(true);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        // A slow cancelled probe re-opens the circuit
+        ticker.advance(OPEN_MS);
+        final ListenableFuture<String> probe = circuitBreaker.execute(constant(SettableFuture.<String>create()));
+        ticker.advance(SLOW_CALL_MS);
+        probe.cancel(true);
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testProbeThrowing() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(WINDOW_SIZE, 0.5, SLOW_CALL_MS, OPEN_MS, ticker);
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            circuitBreaker.execute(failure());
+        }
+        ticker.advance(OPEN_MS);
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.HALF_OPEN);
+
+        try {
+            circuitBreaker.execute(new Supplier<ListenableFuture<String>>() {
+                @Override
+                public ListenableFuture<String> get() {
+                    throw new IllegalStateException("Closed");
+                }
+            });
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Closed");
+        }
+        // The probe isn't leaked: the circuit re-opens, and can close again
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        ticker.advance(OPEN_MS);
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; i++) {
+            Assert.assertEquals(circuitBreaker.execute(success()).get(), "ok");
+        }
+        Assert.assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    private void assertShortCircuited(final ListenableFuture<String> result) throws InterruptedException {
+        Assert.assertTrue(result.isDone());
+        try {
+            result.get();
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+    }
+
+    private static CountingSupplier success() {
+        return new CountingSupplier(Futures.immediateFuture("ok"));
+    }
+
+    private static CountingSupplier failure() {
+        return new CountingSupplier(Futures.<String>immediateFailedFuture(new AccertifyClientException("Accertify returned HTTP status 503")));
+    }
+
+    private static CountingSupplier constant(final ListenableFuture<String> future) {
+        return new CountingSupplier(future);
+    }
+
+    private static final class CountingSupplier implements Supplier<ListenableFuture<String>> {
+
+        private final ListenableFuture<String> future;
+        private int nbCalls;
+
+        private CountingSupplier(final ListenableFuture<String> future) {
+            this.future = future;
+        }
+
+        @Override
+        public ListenableFuture<String> get() {
+            nbCalls++;
+            return future;
+        }
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long ms) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(ms);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestConcurrencyLimiter {
+
+    @Test(groups = "fast")
+    public void testCallsOverTheLimitAreRejected() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 2);
+
+        final SettableFuture<String> first = SettableFuture.<String>create();
+        final SettableFuture<String> second = SettableFuture.<String>create();
+        limiter.execute(constant(first));
+        limiter.execute(constant(second));
+        Assert.assertEquals(limiter.getInFlight(), 2);
+
+        final ListenableFuture<String> rejected = limiter.execute(constant(Futures.immediateFuture("ok")));
+        try {
+            rejected.get();
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ConcurrencyLimitExceededException);
+        }
+        Assert.assertEquals(limiter.getNbRejected(), 1);
+
+        first.set("ok");
+        Assert.assertEquals(limiter.getInFlight(), 1);
+        Assert.assertEquals(limiter.execute(constant(Futures.immediateFuture("ok"))).get(), "ok");
+        Assert.assertEquals(limiter.getNbAccepted(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testDecreaseOnFailuresAndSlowCalls() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 100);
+        Assert.assertEquals(limiter.getLimit(), 100);
+
+        // Baseline
+        limiter.tryAcquire();
+        limiter.release(true, 10);
+        Assert.assertEquals(limiter.getBaselineLatencyMs(), 10);
+
+        limiter.tryAcquire();
+        limiter.release(false, 10);
+        Assert.assertEquals(limiter.getLimit(), (int) (100 * ConcurrencyLimiter.BACKOFF_RATIO));
+
+        limiter.tryAcquire();
+        limiter.release(true, 100);
+        Assert.assertEquals(limiter.getLimit(), (int) (100 * ConcurrencyLimiter.BACKOFF_RATIO * ConcurrencyLimiter.BACKOFF_RATIO));
+
+        // Down to the minimum
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(false, 10);
+        }
+        Assert.assertEquals(limiter.getLimit(), 2);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testIncreaseWhenUsed() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(false, 10);
+        }
+        Assert.assertEquals(limiter.getLimit(), 1);
+
+        // Fast calls, one at a time: the limit is used and grows back
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(true, 10);
+        }
+        Assert.assertTrue(limiter.getLimit() > 1);
+        Assert.assertTrue(limiter.getLimit() <= 10);
+    }
+
+    @Test(groups = "fast")
+    public void testNotCalledFailuresAreIgnored() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+        limiter.execute(constant(Futures.<String>immediateFailedFuture(new CircuitBreakerOpenException("Accertify circuit breaker is open"))));
+        Assert.assertEquals(limiter.getLimit(), 10);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testCancelledCallsAreIgnored() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+        for (int i = 0; i < 100; i++) {
+            // Latency budget exhausted
+            final SettableFuture<String> response = SettableFuture.<String>create();
+            limiter.execute(constant(response)).cancel(true);
+        }
+        Assert.assertEquals(limiter.getLimit(), 10);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testSlowCancelledCallsDecrease() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 100);
+        limiter.tryAcquire();
+        limiter.release(true, 10);
+
+        // Within the latency tolerance
+        limiter.tryAcquire();
+        limiter.releaseCancelled(20);
+        Assert.assertEquals(limiter.getLimit(), 100);
+
+        limiter.tryAcquire();
+        limiter.releaseCancelled(100);
+        Assert.assertEquals(limiter.getLimit(), (int) (100 * ConcurrencyLimiter.BACKOFF_RATIO));
+        Assert.assertEquals(limiter.getBaselineLatencyMs(), 10);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testMBeans() throws Exception {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final UUID kbTenantId = UUID.randomUUID();
+        final ObjectName objectName = new ObjectName("org.killbill.billing.plugin.accertify:type=ConcurrencyLimiter,tenant=" + kbTenantId);
+
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 5);
+        ConcurrencyLimiterMBeans.register(kbTenantId, limiter);
+        Assert.assertEquals(mBeanServer.getAttribute(objectName, "Limit"), 5);
+
+        // New configuration for the tenant
+        ConcurrencyLimiterMBeans.register(kbTenantId, new ConcurrencyLimiter(1, 7));
+        Assert.assertEquals(mBeanServer.getAttribute(objectName, "Limit"), 7);
+
+        // Global configuration
+        final ObjectName defaultObjectName = new ObjectName("org.killbill.billing.plugin.accertify:type=ConcurrencyLimiter,tenant=default");
+        ConcurrencyLimiterMBeans.register(null, new ConcurrencyLimiter(1, 3));
+        Assert.assertEquals(mBeanServer.getAttribute(defaultObjectName, "Limit"), 3);
+
+        ConcurrencyLimiterMBeans.unregisterAll();
+        Assert.assertFalse(mBeanServer.isRegistered(objectName));
+        Assert.assertFalse(mBeanServer.isRegistered(defaultObjectName));
+    }
+
+    private static Supplier<ListenableFuture<String>> constant(final ListenableFuture<String> future) {
+        return new Supplier<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> get() {
+                return future;
+            }
+        };
+    }
+}
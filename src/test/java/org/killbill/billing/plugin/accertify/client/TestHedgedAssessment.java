@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestHedgedAssessment {
+
+    private ScheduledExecutorService scheduler;
+    private List<SettableFuture<TransactionResults>> attempts;
+    private Supplier<ListenableFuture<TransactionResults>> request;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        attempts = new ArrayList<SettableFuture<TransactionResults>>();
+        request = new Supplier<ListenableFuture<TransactionResults>>() {
+            @Override
+            public ListenableFuture<TransactionResults> get() {
+                final SettableFuture<TransactionResults> attempt = SettableFuture.<TransactionResults>create();
+                synchronized (attempts) {
+                    attempts.add(attempt);
+                }
+                return attempt;
+            }
+        };
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test(groups = "fast")
+    public void testNoHedgeWithoutEnoughSamples() throws Exception {
+        final HedgingPolicy policy = new HedgingPolicy(95, 1, 1, new LatencyHistogram());
+        final ListenableFuture<TransactionResults> result = HedgedAssessment.start(request, policy, scheduler);
+
+        Thread.sleep(50);
+        Assert.assertEquals(nbAttempts(), 1);
+        attempt(0).set(new TransactionResults());
+        Assert.assertEquals(result.get().getAttempt(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testHedgeWins() throws Exception {
+        final ListenableFuture<TransactionResults> result = HedgedAssessment.start(request, newPolicy(1, 1), scheduler);
+
+        waitForAttempts(2);
+        attempt(1).set(new TransactionResults());
+
+        Assert.assertEquals(result.get().getAttempt(), 2);
+        // The slow attempt is aborted
+        Assert.assertTrue(attempt(0).isCancelled());
+    }
+
+    @Test(groups = "fast")
+    public void testFirstAttemptWins() throws Exception {
+        final ListenableFuture<TransactionResults> result = HedgedAssessment.start(request, newPolicy(1, 1), scheduler);
+
+        waitForAttempts(2);
+        attempt(0).set(new TransactionResults());
+
+        Assert.assertEquals(result.get().getAttempt(), 1);
+        Assert.assertTrue(attempt(1).isCancelled());
+    }
+
+    @Test(groups = "fast")
+    public void testHedgeAfterFailedAttempt() throws Exception {
+        final ListenableFuture<TransactionResults> result = HedgedAssessment.start(request, newPolicy(1, 1), scheduler);
+
+        waitForAttempts(2);
+        attempt(0).setException(new IOException("Connection reset"));
+        Assert.assertFalse(result.isDone());
+
+        attempt(1).set(new TransactionResults());
+        Assert.assertEquals(result.get().getAttempt(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testFailFastBeforeHedge() throws Exception {
+        final ListenableFuture<TransactionResults> result = HedgedAssessment.start(request, newPolicy(1, 50), scheduler);
+        attempt(0).setException(new IOException("Connection refused"));
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(nbAttempts(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testHedgesAreCapped() throws Exception {
+        // All the hedges are due after the assessments are sent
+        final HedgingPolicy policy = newPolicy(0.25, 50);
+        final List<ListenableFuture<TransactionResults>> results = new ArrayList<ListenableFuture<TransactionResults>>();
+        for (int i = 0; i < 30; i++) {
+            results.add(HedgedAssessment.start(request, policy, scheduler));
+        }
+
+        Thread.sleep(200);
+        // 30 assessments, 7 hedges
+        Assert.assertEquals(nbAttempts(), 37);
+        for (final ListenableFuture<TransactionResults> result : results) {
+            result.cancel(true);
+        }
+        for (int i = 0; i < nbAttempts(); i++) {
+            Assert.assertTrue(attempt(i).isCancelled());
+        }
+    }
+
+    private HedgingPolicy newPolicy(final double maxRatio, final long minDelayMs) {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) {
+            latencies.record(1);
+        }
+        return new HedgingPolicy(99, minDelayMs, maxRatio, latencies);
+    }
+
+    private void waitForAttempts(final int nbAttempts) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (nbAttempts() < nbAttempts && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(nbAttempts(), nbAttempts);
+    }
+
+    private int nbAttempts() {
+        synchronized (attempts) {
+            return attempts.size();
+        }
+    }
+
+    private SettableFuture<TransactionResults> attempt(final int i) {
+        synchronized (attempts) {
+            return attempts.get(i);
+        }
+    }
+}
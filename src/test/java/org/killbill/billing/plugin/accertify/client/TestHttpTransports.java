@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ning.http.client.AsyncHttpClient;
+
+public class TestHttpTransports {
+
+    @Test(groups = "fast")
+    public void testSharedPerKey() {
+        final AsyncHttpClient client = HttpTransports.get("https://accertify.example.com/inbound", null, null, true);
+        // Same host, port and scheme
+        Assert.assertSame(HttpTransports.get("https://accertify.example.com:443/other-path", null, null, true), client);
+
+        Assert.assertNotSame(HttpTransports.get("https://accertify.example.com/inbound", null, null, false), client);
+        Assert.assertNotSame(HttpTransports.get("https://accertify.example.com/inbound", "proxy.example.com", 3128, true), client);
+        Assert.assertNotSame(HttpTransports.get("https://other.example.com/inbound", null, null, true), client);
+
+        HttpTransports.closeAll();
+        Assert.assertTrue(client.isClosed());
+        Assert.assertEquals(HttpTransports.size(), 0);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+public class TestLatencyHistogram {
+
+    @Test(groups = "fast")
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.getPercentileMs(99), -1);
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(histogram.getTotalCount(), 1000);
+
+        // Within the 10% bucket precision
+        assertWithin(histogram.getPercentileMs(50), 500);
+        assertWithin(histogram.getPercentileMs(99), 990);
+        assertWithin(histogram.getPercentileMs(100), 1000);
+        Assert.assertEquals(histogram.getPercentileMs(0), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testOutOfRangeLatencies() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(histogram.getPercentileMs(50), 1);
+        Assert.assertTrue(histogram.getPercentileMs(100) >= 120 * 1000);
+    }
+
+    @Test(groups = "fast")
+    public void testSlidingWindow() {
+        final FakeTicker ticker = new FakeTicker();
+        // 6 slices of 10s
+        final LatencyHistogram histogram = new LatencyHistogram(60000, 6, ticker);
+
+        histogram.record(1000);
+        ticker.advance(30000);
+        histogram.record(100);
+        Assert.assertEquals(histogram.getTotalCount(), 2);
+        assertWithin(histogram.getPercentileMs(100), 1000);
+
+        // The first slice leaves the window
+        ticker.advance(30000);
+        Assert.assertEquals(histogram.getTotalCount(), 1);
+        assertWithin(histogram.getPercentileMs(100), 100);
+
+        // Slice re-used
+        histogram.record(10);
+        Assert.assertEquals(histogram.getTotalCount(), 2);
+
+        ticker.advance(120000);
+        Assert.assertEquals(histogram.getTotalCount(), 0);
+        Assert.assertEquals(histogram.getPercentileMs(50), -1);
+    }
+
+    private void assertWithin(final long actual, final long expected) {
+        Assert.assertTrue(actual >= expected && actual <= expected * 1.1, "Got " + actual + ", expected about " + expected);
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private long nanos = -123456789;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(final long ms) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(ms);
+        }
+    }
+}
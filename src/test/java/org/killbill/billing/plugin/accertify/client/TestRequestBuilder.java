@@ -21,13 +21,19 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
+
 public class TestRequestBuilder {
 
     private RequestBuilder requestBuilder;
 
     @BeforeMethod(groups = "fast")
     public void setUp() throws Exception {
-        requestBuilder = new RequestBuilder();
+        requestBuilder = createRequestBuilder();
+    }
+
+    protected RequestBuilder createRequestBuilder() {
+        return new RequestBuilder();
     }
 
     @Test(groups = "fast")
@@ -101,4 +107,84 @@ public class TestRequestBuilder {
                                  "</transaction>" +
                                  "</transactions>", xml);
     }
+
+    @Test(groups = "fast")
+    public void testBuildAsBytes() throws AccertifyClientException {
+        requestBuilder.addTransactionEntry("ipAddress", "127.0.0.1");
+        requestBuilder.addTransactionEntry("customerInformation->userLastName", "Doe \u00e9");
+        requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->shippingName", "Jane Doe");
+
+        final byte[] bytes = requestBuilder.buildAsBytes();
+        Assert.assertEquals(new String(bytes, Charsets.UTF_8), requestBuilder.build());
+        // The pooled buffer is reused across builds
+        Assert.assertEquals(requestBuilder.buildAsBytes(), bytes);
+    }
+
+    @Test(groups = "fast")
+    public void testMultipleTransactions() throws AccertifyClientException {
+        requestBuilder.addTransactionEntry("transactionID", "1");
+        requestBuilder.addTransactionEntry("ipAddress", "127.0.0.1");
+        requestBuilder.addTransaction();
+        requestBuilder.addTransactionEntry("transactionID", "2");
+        requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->shippingName", "Jane Doe");
+
+        final String xml = requestBuilder.build();
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<ipAddress>127.0.0.1</ipAddress>" +
+                                 "<transactionID>1</transactionID>" +
+                                 "</transaction>" +
+                                 "<transaction>" +
+                                 "<orderDetails>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>Jane Doe</shippingName>" +
+                                 "</orderDetail>" +
+                                 "</orderDetails>" +
+                                 "<transactionID>2</transactionID>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+
+    @Test(groups = "fast")
+    public void testSparseListIndexes() throws AccertifyClientException {
+        requestBuilder.addTransactionEntry("orderDetails->orderDetail[7]->shippingName", "Jane Doe");
+        requestBuilder.addTransactionEntry("orderDetails->orderDetail[2]->shippingName", "John Doe");
+
+        final String xml = requestBuilder.build();
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<orderDetails>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>John Doe</shippingName>" +
+                                 "</orderDetail>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>Jane Doe</shippingName>" +
+                                 "</orderDetail>" +
+                                 "</orderDetails>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+
+    @Test(groups = "fast")
+    public void testLargeNumberOfLineItems() throws AccertifyClientException {
+        for (final int nbLineItems : new int[]{10, 100, 1000, 10000}) {
+            final RequestBuilder builder = createRequestBuilder();
+            // Worst case for the list handling: last index first
+            for (int i = nbLineItems - 1; i >= 0; i--) {
+                builder.addTransactionEntry("orderDetails->orderDetail[" + i + "]->itemNumber", "sku-" + i);
+                builder.addTransactionEntry("orderDetails->orderDetail[" + i + "]->quantity", i);
+            }
+
+            final String xml = builder.build();
+
+            // One orderDetail per line item, in index order
+            int position = 0;
+            for (int i = 0; i < nbLineItems; i++) {
+                final int itemPosition = xml.indexOf("<orderDetail><itemNumber>sku-" + i + "</itemNumber><quantity>" + i + "</quantity></orderDetail>", position);
+                Assert.assertTrue(itemPosition >= position, "Line item " + i + " missing or out of order for " + nbLineItems + " line items");
+                position = itemPosition + 1;
+            }
+            Assert.assertEquals(xml.split("<orderDetail>", -1).length - 1, nbLineItems);
+        }
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Groupon, Inc
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRequestDataCollection {
+
+    @Test(groups = "fast")
+    public void testGrowsToHighestIndexOnly() {
+        final RequestDataCollection collection = new RequestDataCollection("orderDetail");
+
+        final Map<String, Object> fifth = collection.getOrCreate(4);
+        Assert.assertEquals(collection.size(), 5);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNull(collection.get(i));
+        }
+
+        final Map<String, Object> second = collection.getOrCreate(1);
+        Assert.assertEquals(collection.size(), 5);
+        Assert.assertSame(collection.getOrCreate(1), second);
+        Assert.assertSame(collection.getOrCreate(4), fifth);
+
+        for (int i = 10000; i >= 0; i--) {
+            collection.getOrCreate(i);
+        }
+        Assert.assertEquals(collection.size(), 10001);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestRequestPath {
+
+    @Test(groups = "fast")
+    public void testSimplePath() {
+        final RequestPath path = RequestPath.compile("ipAddress");
+        Assert.assertEquals(path.getDepth(), 1);
+        Assert.assertEquals(path.getName(0), "ipAddress");
+        Assert.assertFalse(path.isList(0));
+    }
+
+    @Test(groups = "fast")
+    public void testNestedPath() {
+        final RequestPath path = RequestPath.compile("collectionTransaction->cardDetails->billingFirstName");
+        Assert.assertEquals(path.getDepth(), 3);
+        Assert.assertEquals(path.getName(0), "collectionTransaction");
+        Assert.assertEquals(path.getName(1), "cardDetails");
+        Assert.assertEquals(path.getName(2), "billingFirstName");
+        for (int level = 0; level < path.getDepth(); level++) {
+            Assert.assertFalse(path.isList(level));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testListPath() {
+        final RequestPath path = RequestPath.compile("orderDetails->orderDetail[3]->shippingName");
+        Assert.assertEquals(path.getDepth(), 3);
+        Assert.assertEquals(path.getName(0), "orderDetails");
+        Assert.assertTrue(path.isList(0));
+        Assert.assertEquals(path.getListIndex(0), 3);
+        Assert.assertEquals(path.getChildElementName(0), "orderDetail");
+        Assert.assertEquals(path.getName(1), "orderDetail");
+        Assert.assertFalse(path.isList(1));
+        Assert.assertEquals(path.getName(2), "shippingName");
+        Assert.assertFalse(path.isList(2));
+    }
+
+    @Test(groups = "fast")
+    public void testCache() {
+        final RequestPathCache cache = new RequestPathCache("accertify_", 10);
+        Assert.assertNull(cache.get("ipAddress"));
+        Assert.assertNull(cache.get("accertify_"));
+
+        final RequestPath path = cache.get("accertify_orderDetails->orderDetail[3]->shippingName");
+        Assert.assertEquals(path.getEntryKey(), "orderDetails->orderDetail[3]->shippingName");
+        Assert.assertSame(cache.get("accertify_orderDetails->orderDetail[3]->shippingName"), path);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNotNull(cache.get("accertify_key" + i));
+        }
+        Assert.assertTrue(cache.size() <= 10);
+    }
+}
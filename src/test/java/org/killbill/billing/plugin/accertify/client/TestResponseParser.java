@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.ning.http.client.HttpResponseBodyPart;
+
+public class TestResponseParser {
+
+    @Test(groups = "fast")
+    public void testTransactionResults() throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                           "<transaction-results>" +
+                           "<transaction-id>aa</transaction-id>" +
+                           "<total-score>42</total-score>" +
+                           "<recommendation-code>ACCEPT</recommendation-code>" +
+                           "</transaction-results>";
+        final TransactionResults transactionResults = ResponseParser.parseTransactionResults(xml);
+        Assert.assertEquals(transactionResults.getTransactionId(), "aa");
+        Assert.assertEquals(transactionResults.getTotalScore(), "42");
+        Assert.assertEquals(transactionResults.getRecommendationCode(), "ACCEPT");
+        Assert.assertNull(transactionResults.getResponseData());
+
+        // Generic Jackson binding
+        final TransactionResults boundTransactionResults = ResponseParser.parse(toStream(xml), TransactionResults.class, XmlMapperProvider.getTransactionResultsReader());
+        Assert.assertEquals(boundTransactionResults.getTransactionId(), "aa");
+        Assert.assertEquals(boundTransactionResults.getRecommendationCode(), "ACCEPT");
+    }
+
+    @Test(groups = "fast")
+    public void testCharset() throws Exception {
+        final String xml = "<transaction-results>" +
+                           "<transaction-id>aa</transaction-id>" +
+                           "<responseData><transaction><transaction-details><transaction-detail><name>city</name><value>Gen\u00e8ve</value></transaction-detail></transaction-details></transaction></responseData>" +
+                           "<remarks>No\u00ebl</remarks>" +
+                           "</transaction-results>";
+
+        // XML default
+        Assert.assertEquals(ResponseParser.decode(xml.getBytes(Charsets.UTF_8), null), xml);
+        // Content-Type header
+        Assert.assertEquals(ResponseParser.decode(xml.getBytes(Charsets.ISO_8859_1), "application/xml; charset=\"ISO-8859-1\""), xml);
+        // XML prolog
+        final String prologXml = "<?xml version=\"1.0\" encoding='iso-8859-1'?>" + xml;
+        Assert.assertEquals(ResponseParser.decode(prologXml.getBytes(Charsets.ISO_8859_1), "application/xml"), prologXml);
+        // Byte order marks
+        final byte[] utf8Xml = xml.getBytes(Charsets.UTF_8);
+        final byte[] bomXml = new byte[utf8Xml.length + 3];
+        bomXml[0] = (byte) 0xEF;
+        bomXml[1] = (byte) 0xBB;
+        bomXml[2] = (byte) 0xBF;
+        System.arraycopy(utf8Xml, 0, bomXml, 3, utf8Xml.length);
+        Assert.assertEquals(ResponseParser.decode(bomXml, null), xml);
+        Assert.assertEquals(ResponseParser.decode(xml.getBytes(Charsets.UTF_16), null), xml);
+
+        final TransactionResults transactionResults = ResponseParser.parseTransactionResults(ResponseParser.decode(prologXml.getBytes(Charsets.ISO_8859_1), null));
+        Assert.assertEquals(transactionResults.getRemarks(), "No\u00ebl");
+        Assert.assertTrue(transactionResults.getResponseData().getRawXml().contains("<value>Gen\u00e8ve</value>"));
+        Assert.assertEquals(transactionResults.getResponseData().getTransaction().getTransactionDetails().get(0).get("value"), "Gen\u00e8ve");
+    }
+
+    @Test(groups = "fast")
+    public void testRawResponseData() throws Exception {
+        final String responseData = "<responseData>" +
+                                    "<transaction>" +
+                                    "<transaction-details>" +
+                                    "<transaction-detail><name>score</name><value>&lt;42&gt;</value></transaction-detail>" +
+                                    "</transaction-details>" +
+                                    "</transaction>" +
+                                    "</responseData>";
+        final String xml = "<transaction-results>\n" +
+                           "  <transaction-id>aa</transaction-id>\n" +
+                           "  " + responseData + "\n" +
+                           "  <recommendation-code>REJECT</recommendation-code>\n" +
+                           "  <remarks><![CDATA[a & b]]></remarks>\n" +
+                           "</transaction-results>";
+        final TransactionResults transactionResults = ResponseParser.parseTransactionResults(xml);
+        Assert.assertEquals(transactionResults.getTransactionId(), "aa");
+        Assert.assertEquals(transactionResults.getRecommendationCode(), "REJECT");
+        Assert.assertEquals(transactionResults.getRemarks(), "a & b");
+        Assert.assertEquals(transactionResults.getResponseData().getRawXml(), responseData);
+
+        // Parsed on demand
+        final ResponseTransactionDetails transactionDetails = transactionResults.getResponseData().getTransaction().getTransactionDetails();
+        Assert.assertEquals(transactionDetails.size(), 1);
+        Assert.assertEquals(transactionDetails.get(0).get("value"), "<42>");
+    }
+
+    @Test(groups = "fast")
+    public void testEmptyResponseData() throws Exception {
+        final TransactionResults transactionResults = ResponseParser.parseTransactionResults("<transaction-results><responseData/><total-score>1</total-score></transaction-results>");
+        Assert.assertEquals(transactionResults.getResponseData().getRawXml(), "<responseData/>");
+        Assert.assertEquals(transactionResults.getTotalScore(), "1");
+    }
+
+    @Test(groups = "fast")
+    public void testTransactionResultsList() throws Exception {
+        final String xml = "<transactions-results>" +
+                           "<transaction-results><cross-reference>1</cross-reference></transaction-results>" +
+                           "<transaction-results><cross-reference>2</cross-reference></transaction-results>" +
+                           "</transactions-results>";
+        final TransactionResultsList transactionResultsList = ResponseParser.parseTransactionResultsList(xml);
+        Assert.assertEquals(transactionResultsList.getTransactionResults().size(), 2);
+        Assert.assertEquals(transactionResultsList.getTransactionResults().get(1).getCrossReference(), "2");
+
+        // Any root element
+        final String otherRootXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                                    "<transactions>\n" +
+                                    "  <transaction-results><cross-reference>1</cross-reference></transaction-results>\n" +
+                                    "  <status>OK</status>\n" +
+                                    "  <transaction-results><cross-reference>2</cross-reference></transaction-results>\n" +
+                                    "</transactions>";
+        final TransactionResultsList otherRootList = ResponseParser.parseTransactionResultsList(otherRootXml);
+        Assert.assertEquals(otherRootList.getTransactionResults().size(), 2);
+        Assert.assertEquals(otherRootList.getTransactionResults().get(0).getCrossReference(), "1");
+        Assert.assertEquals(otherRootList.getTransactionResults().get(1).getCrossReference(), "2");
+
+        // Single transaction
+        final TransactionResultsList singleList = ResponseParser.parseTransactionResultsList("<transaction-results><cross-reference>1</cross-reference></transaction-results>");
+        Assert.assertEquals(singleList.getTransactionResults().size(), 1);
+        Assert.assertEquals(singleList.getTransactionResults().get(0).getCrossReference(), "1");
+    }
+
+    @Test(groups = "fast")
+    public void testTransactionResultsListError() throws Exception {
+        try {
+            ResponseParser.parseTransactionResultsList("<ERROR>The request could not be processed</ERROR>");
+            Assert.fail();
+        } catch (final IOException e) {
+            Assert.assertEquals(e.getMessage(), "Accertify returned an error: The request could not be processed");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testErrorResponse() throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><ERROR>The request could not be processed</ERROR>";
+        try {
+            ResponseParser.parseTransactionResults(xml);
+            Assert.fail();
+        } catch (final IOException e) {
+            Assert.assertEquals(e.getMessage(), "Accertify returned an error: The request could not be processed");
+        }
+    }
+
+    @Test(groups = "fast", expectedExceptions = IOException.class)
+    public void testInvalidResponse() throws Exception {
+        ResponseParser.parseTransactionResults("<html><body>Bad gateway");
+    }
+
+    @Test(groups = "fast")
+    public void testMaxBodySize() throws Exception {
+        final BoundedResponseHandler handler = new BoundedResponseHandler(10);
+
+        final HttpResponseBodyPart bodyPart = Mockito.mock(HttpResponseBodyPart.class);
+        Mockito.when(bodyPart.length()).thenReturn(6);
+        handler.onBodyPartReceived(bodyPart);
+        try {
+            handler.onBodyPartReceived(bodyPart);
+            Assert.fail();
+        } catch (final BoundedResponseHandler.ResponseTooLargeException e) {
+            Assert.assertEquals(e.getMessage(), "Accertify response exceeds the maximum size of 10 bytes");
+        }
+    }
+
+    private static InputStream toStream(final String xml) {
+        return new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8));
+    }
+}
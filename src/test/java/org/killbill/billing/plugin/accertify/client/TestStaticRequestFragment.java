@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestStaticRequestFragment {
+
+    private final StaticRequestFragment staticFragment;
+
+    public TestStaticRequestFragment() throws AccertifyClientException {
+        staticFragment = StaticRequestFragment.compile(ImmutableMap.<String, String>of("siteCode", "KB",
+                                                                                      "collectionTransaction->merchantId", "M&1",
+                                                                                      "collectionTransaction->channel", "WEB"),
+                                                       RequestOrdering.SORTED);
+    }
+
+    @Test(groups = "fast")
+    public void testStaticFieldsOnly() throws AccertifyClientException {
+        for (final RequestBuilder.Mode mode : RequestBuilder.Mode.values()) {
+            final String xml = new RequestBuilder(mode).addStaticFragment(staticFragment)
+                                                       .addTransactionEntry("ipAddress", "127.0.0.1")
+                                                       .build();
+            Assert.assertEquals(xml, "<transactions>" +
+                                     "<transaction>" +
+                                     "<collectionTransaction>" +
+                                     "<channel>WEB</channel>" +
+                                     "<merchantId>M&amp;1</merchantId>" +
+                                     "</collectionTransaction>" +
+                                     "<ipAddress>127.0.0.1</ipAddress>" +
+                                     "<siteCode>KB</siteCode>" +
+                                     "</transaction>" +
+                                     "</transactions>", mode + ": " + xml);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testStaticFieldsMergedWithTransactionFields() throws AccertifyClientException {
+        for (final RequestBuilder.Mode mode : RequestBuilder.Mode.values()) {
+            final String xml = new RequestBuilder(mode).addStaticFragment(staticFragment)
+                                                       .addTransactionEntry("collectionTransaction->billingFirstName", "John")
+                                                       .addTransactionEntry("collectionTransaction->channel", "MOBILE")
+                                                       .addTransactionEntry("siteCode", "OTHER")
+                                                       .build();
+            Assert.assertEquals(xml, "<transactions>" +
+                                     "<transaction>" +
+                                     "<collectionTransaction>" +
+                                     "<billingFirstName>John</billingFirstName>" +
+                                     "<channel>MOBILE</channel>" +
+                                     "<merchantId>M&amp;1</merchantId>" +
+                                     "</collectionTransaction>" +
+                                     "<siteCode>OTHER</siteCode>" +
+                                     "</transaction>" +
+                                     "</transactions>", mode + ": " + xml);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testMultipleTransactions() throws AccertifyClientException {
+        final String xml = new RequestBuilder(RequestBuilder.Mode.STREAMING).addTransaction()
+                                                                            .addStaticFragment(staticFragment)
+                                                                            .addTransactionEntry("siteCode", "OTHER")
+                                                                            .addTransaction()
+                                                                            .addStaticFragment(staticFragment)
+                                                                            .build();
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<collectionTransaction>" +
+                                 "<channel>WEB</channel>" +
+                                 "<merchantId>M&amp;1</merchantId>" +
+                                 "</collectionTransaction>" +
+                                 "<siteCode>OTHER</siteCode>" +
+                                 "</transaction>" +
+                                 "<transaction>" +
+                                 "<collectionTransaction>" +
+                                 "<channel>WEB</channel>" +
+                                 "<merchantId>M&amp;1</merchantId>" +
+                                 "</collectionTransaction>" +
+                                 "<siteCode>KB</siteCode>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+}
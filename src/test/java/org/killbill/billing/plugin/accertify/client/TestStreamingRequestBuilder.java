@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Runs all TestRequestBuilder tests against the streaming mode, which must produce the same documents
+public class TestStreamingRequestBuilder extends TestRequestBuilder {
+
+    @Override
+    protected RequestBuilder createRequestBuilder() {
+        return new RequestBuilder(RequestBuilder.Mode.STREAMING);
+    }
+
+    @Test(groups = "fast")
+    public void testSameOutputAsTreeMode() throws AccertifyClientException {
+        final RequestBuilder treeRequestBuilder = new RequestBuilder(RequestBuilder.Mode.TREE);
+        final RequestBuilder streamingRequestBuilder = new RequestBuilder(RequestBuilder.Mode.STREAMING);
+        for (final RequestBuilder requestBuilder : new RequestBuilder[]{treeRequestBuilder, streamingRequestBuilder}) {
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[2]->shippingName", "Jack & Jill");
+            requestBuilder.addTransactionEntry("ipAddress", "127.0.0.1");
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->shippingName", "Jane Doe");
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->itemPrice", "12.44");
+            requestBuilder.addTransactionEntry("collectionTransaction->cardDetails->billingLastName", "Doe");
+            requestBuilder.addTransactionEntry("collectionTransaction->billingEmail", null);
+            requestBuilder.addTransactionEntry("collectionTransaction->cardDetails->billingFirstName", "John");
+            requestBuilder.addTransactionEntry("ipAddress", "10.0.0.1");
+        }
+
+        final String xml = streamingRequestBuilder.build();
+        Assert.assertEquals(xml, treeRequestBuilder.build());
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<collectionTransaction>" +
+                                 "<billingEmail/>" +
+                                 "<cardDetails>" +
+                                 "<billingFirstName>John</billingFirstName>" +
+                                 "<billingLastName>Doe</billingLastName>" +
+                                 "</cardDetails>" +
+                                 "</collectionTransaction>" +
+                                 "<ipAddress>10.0.0.1</ipAddress>" +
+                                 "<orderDetails>" +
+                                 "<orderDetail>" +
+                                 "<itemPrice>12.44</itemPrice>" +
+                                 "<shippingName>Jane Doe</shippingName>" +
+                                 "</orderDetail>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>Jack &amp; Jill</shippingName>" +
+                                 "</orderDetail>" +
+                                 "</orderDetails>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+
+    @Test(groups = "fast")
+    public void testInsertionOrdering() throws AccertifyClientException {
+        final RequestBuilder treeRequestBuilder = new RequestBuilder(RequestBuilder.Mode.TREE, RequestOrdering.INSERTION);
+        final RequestBuilder streamingRequestBuilder = new RequestBuilder(RequestBuilder.Mode.STREAMING, RequestOrdering.INSERTION);
+        for (final RequestBuilder requestBuilder : new RequestBuilder[]{treeRequestBuilder, streamingRequestBuilder}) {
+            requestBuilder.addTransactionEntry("transactionType", "CAPTURE");
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[1]->shippingName", "John Doe");
+            requestBuilder.addTransactionEntry("ipAddress", "127.0.0.1");
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->shippingName", "Jane Doe");
+            requestBuilder.addTransactionEntry("orderDetails->orderDetail[0]->itemPrice", "12.44");
+            requestBuilder.addTransactionEntry("transactionType", "AUTHORIZE");
+        }
+
+        final String xml = streamingRequestBuilder.build();
+        Assert.assertEquals(xml, treeRequestBuilder.build());
+        Assert.assertEquals(xml, "<transactions>" +
+                                 "<transaction>" +
+                                 "<transactionType>AUTHORIZE</transactionType>" +
+                                 "<orderDetails>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>Jane Doe</shippingName>" +
+                                 "<itemPrice>12.44</itemPrice>" +
+                                 "</orderDetail>" +
+                                 "<orderDetail>" +
+                                 "<shippingName>John Doe</shippingName>" +
+                                 "</orderDetail>" +
+                                 "</orderDetails>" +
+                                 "<ipAddress>127.0.0.1</ipAddress>" +
+                                 "</transaction>" +
+                                 "</transactions>", xml);
+    }
+}
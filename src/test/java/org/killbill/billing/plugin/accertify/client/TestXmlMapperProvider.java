@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2017 Groupon, Inc
+ * Copyright 2014-2017 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.accertify.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestXmlMapperProvider {
+
+    @Test(groups = "fast")
+    public void testSharedInstances() throws Exception {
+        Assert.assertSame(XmlMapperProvider.getShared(), XmlMapperProvider.getShared());
+        Assert.assertSame(XmlMapperProvider.getTransactionsWriter(), XmlMapperProvider.getTransactionsWriter());
+        Assert.assertSame(XmlMapperProvider.getTransactionResultsReader(), XmlMapperProvider.getTransactionResultsReader());
+        Assert.assertSame(XmlMapperProvider.getErrorResponseReader(), XmlMapperProvider.getErrorResponseReader());
+        Assert.assertNotSame(XmlMapperProvider.get(), XmlMapperProvider.getShared());
+    }
+
+    @Test(groups = "fast")
+    public void testSharedWriterMatchesPrivateMapper() throws Exception {
+        XmlMapperProvider.warmUp();
+
+        final Transaction transaction = new Transaction();
+        transaction.putAll(ImmutableMap.<String, Object>of("transactionID", "1", "totalAmount", "10"));
+        final Transactions transactions = new Transactions();
+        transactions.getTransactions().add(transaction);
+
+        final String expected = XmlMapperProvider.get().writeValueAsString(transactions);
+        Assert.assertEquals(XmlMapperProvider.getTransactionsWriter().writeValueAsString(transactions), expected);
+    }
+}